@@ -1,14 +1,49 @@
+import data.DataStore;
+import data.OrderServer;
+import data.Store;
 import javafx.application.Application;
 import javafx.stage.Stage;
 import view.LoginView;
 
+import java.io.IOException;
+import java.net.InetAddress;
+
+/**
+ * Starts the app. Options:
+ * <pre>
+ *   --server [port [address]]  run headless as the shared order server (default port 5150),
+ *                              listening on this machine only unless an address is given
+ *   --connect host[:port]      use the order server instead of the local data files
+ * </pre>
+ */
 public class Main extends Application {
     @Override
     public void start(Stage primaryStage) {
         new LoginView(primaryStage).show();
     }
 
-    public static void main(String[] args) {
+    @Override
+    public void stop() {
+        // Write out anything the background persister has not saved yet
+        Store.getInstance().close();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("--server")) {
+            int port = args.length > 1 ? Integer.parseInt(args[1]) : OrderServer.DEFAULT_PORT;
+            InetAddress address = args.length > 2 ? InetAddress.getByName(args[2]) : InetAddress.getLoopbackAddress();
+            DataStore store = DataStore.getInstance();
+            OrderServer server = new OrderServer(store, address, port);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.close();
+                store.close();
+            }));
+            server.start();
+            return;
+        }
+        if (args.length > 1 && args[0].equals("--connect")) {
+            System.setProperty("cafe.server", args[1]);
+        }
         launch(args);
     }
 }
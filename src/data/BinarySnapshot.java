@@ -0,0 +1,195 @@
+package data;
+
+import model.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Compact binary snapshot of the orders, read back in one bulk read.
+ * Used for fast startup; orders.json stays the human-readable export.
+ * <p>
+ * Layout (big-endian):
+ * <pre>
+ * int    magic, int version
+ * int    string count, then per string: int length + UTF-8 bytes
+ * int    order count, then per order:
+ *   int  record length (bytes that follow, so a reader can skip records)
+ *   str  orderId (inline: int length + UTF-8 bytes)
+ *   long createdTime, byte status, int buyer ref, int room ref
+ *   int  item count, then per item: int productId ref, int productName ref,
+ *        double unit price as sold, int quantity
+ * </pre>
+ * Repeated strings (buyers, rooms, product ids and names) are stored once in the
+ * dictionary and referenced by index.
+ */
+public class BinarySnapshot {
+    private static final int MAGIC = 0xCAFE0DE5;
+    private static final int VERSION = 1;
+
+    private BinarySnapshot() {
+    }
+
+    // ==================== WRITE ====================
+
+    /**
+     * Atomically writes the orders as a binary snapshot.
+     *
+     * @return the number of bytes written
+     */
+    public static long writeOrders(List<Order> orders, String filePath) throws IOException {
+        // First pass: build the string dictionary
+        Map<String, Integer> dictionary = new LinkedHashMap<>();
+        for (Order o : orders) {
+            intern(dictionary, o.getBuyerUsername());
+            intern(dictionary, o.getRoomName());
+            for (CartItem item : o.getItems()) {
+                intern(dictionary, item.getProduct().getId());
+                intern(dictionary, item.getProduct().getName());
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(orders.size() * 64 + 1024);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(dictionary.size());
+        for (String s : dictionary.keySet()) {
+            writeString(out, s);
+        }
+
+        // Second pass: fixed-width, length-prefixed order records
+        out.writeInt(orders.size());
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(128);
+        DataOutputStream record = new DataOutputStream(recordBytes);
+        for (Order o : orders) {
+            recordBytes.reset();
+            writeString(record, o.getOrderId());
+            record.writeLong(o.getCreatedTime());
+            record.writeByte(o.getStatus().ordinal());
+            record.writeInt(dictionary.get(nonNull(o.getBuyerUsername())));
+            record.writeInt(dictionary.get(nonNull(o.getRoomName())));
+            record.writeInt(o.getItems().size());
+            for (CartItem item : o.getItems()) {
+                record.writeInt(dictionary.get(nonNull(item.getProduct().getId())));
+                record.writeInt(dictionary.get(nonNull(item.getProduct().getName())));
+                record.writeDouble(item.getUnitPrice());
+                record.writeInt(item.getQuantity());
+            }
+            record.flush();
+            out.writeInt(recordBytes.size());
+            recordBytes.writeTo(out);
+        }
+        out.flush();
+
+        byte[] data = bytes.toByteArray();
+        DurableFile.writeAtomically(Path.of(filePath), data);
+        return data.length;
+    }
+
+    // ==================== READ ====================
+
+    /**
+     * Reads the snapshot file and rebuilds the orders, resolving items against the
+     * loaded products where possible.
+     * <p>
+     * The file is read into a heap buffer rather than mapped: a mapping outlives the
+     * channel until it is garbage collected, and on Windows a mapped file cannot be
+     * replaced, which would make every later compaction fail.
+     */
+    public static List<Order> readOrders(String filePath, Map<String, Product> productsById) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot too large to read: " + channel.size() + " bytes");
+            }
+            buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new EOFException("Snapshot ended early: " + filePath);
+                }
+            }
+        }
+        buffer.flip();
+        return readOrders(buffer, productsById);
+    }
+
+    private static List<Order> readOrders(ByteBuffer buffer, Map<String, Product> productsById)
+            throws IOException {
+        if (buffer.remaining() < 8 || buffer.getInt() != MAGIC) {
+            throw new IOException("Not an order snapshot");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot version " + version);
+        }
+
+        String[] strings = new String[buffer.getInt()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = readString(buffer);
+        }
+
+        // Placeholder products are shared per dictionary entry, like the real ones
+        Product[] resolved = new Product[strings.length];
+        OrderStatus[] statuses = OrderStatus.values();
+
+        int count = buffer.getInt();
+        List<Order> orders = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int recordLength = buffer.getInt();
+            int recordEnd = buffer.position() + recordLength;
+            String orderId = readString(buffer);
+            long createdTime = buffer.getLong();
+            OrderStatus status = statuses[buffer.get()];
+            String buyer = strings[buffer.getInt()];
+            String room = strings[buffer.getInt()];
+            int itemCount = buffer.getInt();
+            List<CartItem> items = new ArrayList<>(itemCount);
+            for (int j = 0; j < itemCount; j++) {
+                int idRef = buffer.getInt();
+                int nameRef = buffer.getInt();
+                double price = buffer.getDouble();
+                int quantity = buffer.getInt();
+                Product product = resolved[idRef];
+                if (product == null) {
+                    product = productsById.get(strings[idRef]);
+                    if (product == null) {
+                        // Create a placeholder product if not found
+                        product = new Product(strings[idRef], strings[nameRef], price, "", 0, Category.MAKANAN);
+                    }
+                    resolved[idRef] = product;
+                }
+                items.add(new CartItem(product, quantity, price));
+            }
+            buffer.position(recordEnd);
+            orders.add(new Order(orderId, buyer, room, items, status, createdTime));
+        }
+        return orders;
+    }
+
+    // ==================== HELPER METHODS ====================
+
+    private static void intern(Map<String, Integer> dictionary, String s) {
+        dictionary.putIfAbsent(nonNull(s), dictionary.size());
+    }
+
+    private static String nonNull(String s) {
+        return s == null ? "" : s;
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = nonNull(s).getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,53 @@
+package data;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Delivers {@link StoreEvent}s to listeners on a single background thread.
+ * Publishing only queues the event, so a store can publish while holding its lock
+ * without waiting on listeners, and events still arrive in the order they were published.
+ * Nothing is queued while there are no listeners.
+ */
+public class ChangeBus {
+    private final List<StoreListener> listeners = new CopyOnWriteArrayList<>();
+    private final ExecutorService dispatcher = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "store-events");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public void addListener(StoreListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(StoreListener listener) {
+        listeners.remove(listener);
+    }
+
+    public boolean hasListeners() {
+        return !listeners.isEmpty();
+    }
+
+    public void publish(StoreEvent.Type type, String id) {
+        if (listeners.isEmpty()) {
+            return;
+        }
+        StoreEvent event = new StoreEvent(type, id);
+        dispatcher.execute(() -> {
+            for (StoreListener listener : listeners) {
+                try {
+                    listener.storeChanged(event);
+                } catch (RuntimeException e) {
+                    System.err.println("Error in store listener for " + event + ": " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    public void close() {
+        dispatcher.shutdown();
+    }
+}
@@ -2,24 +2,133 @@ package data;
 
 import model.Product;
 import model.User;
+import model.CartItem;
 import model.Order;
+import model.OrderIdGenerator;
+import model.OrderStatus;
 import model.Category;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.YearMonth;
+import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
-public class DataStore {
-    private static DataStore instance;
+/**
+ * Central store for users, products and orders.
+ * Safe to use from many threads: reads share a read lock and writes take the write
+ * lock. The list getters return immutable snapshots that are rebuilt only after a
+ * change, so readers never see a list being modified under them.
+ */
+public class DataStore implements Store {
     private List<User> users;
     private List<Product> products;
     private List<Order> orders;
 
+    // Hash indexes over the lists above, kept in sync by every mutator.
+    // Concurrent maps, so lookups by id or name need no lock.
+    private final Map<String, Product> productsById = new ConcurrentHashMap<>();
+    private final Map<String, User> usersByName = new ConcurrentHashMap<>();
+    // Substring search over product names and descriptions (guarded by the lock)
+    private final ProductSearchIndex searchIndex = new ProductSearchIndex();
+
+    // Secondary indexes over the hot orders, in insertion order
+    private final Map<String, Order> ordersById = new HashMap<>();
+    private final Map<OrderStatus, Set<Order>> ordersByStatus = new EnumMap<>(OrderStatus.class);
+    // In placement order, so history pages can be read backwards from a cursor
+    private final Map<String, NavigableSet<Order>> ordersByBuyer = new HashMap<>();
+
+    // Stock held by each cart (or server connection), by holder then product, so a
+    // holder can only release or check out what it reserved itself
+    private final Map<String, Map<Product, Integer>> reservations = new ConcurrentHashMap<>();
+
+    // Guards the lists, indexes and totals; the persister thread takes the write lock as well
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Lock readLock = lock.readLock();
+    private final Lock writeLock = lock.writeLock();
+
+    // Immutable copies handed to readers, dropped (set to null) when the list changes
+    private volatile List<User> usersView;
+    private volatile List<Product> productsView;
+    private volatile List<Order> ordersView;
+
+    // Running totals for the statistics: hot orders, and the archive as a whole
+    private final SalesStats hotStats = new SalesStats();
+    private SalesStats archivedStats = new SalesStats();
+    // Both combined, republished after every change so readers need no lock
+    private volatile SalesStats totals = new SalesStats();
+    // Delivered sales in time buckets for the charts: hot orders, and archived months
+    // rolled up from their segments the first time a range reaches them
+    private final SalesRollup hotRollup = new SalesRollup();
+    private final Map<YearMonth, SalesRollup> archivedRollups = new ConcurrentHashMap<>();
+    // Bumped under the write lock whenever archived rollups are dropped, so one built
+    // from a segment read without the lock is not cached once it is out of date
+    private volatile long archiveGeneration;
+
     private static final String DATA_DIR = "data";
     private static final String USERS_FILE = DATA_DIR + "/users.json";
     private static final String PRODUCTS_FILE = DATA_DIR + "/products.json";
     private static final String ORDERS_FILE = DATA_DIR + "/orders.json";
+    private static final String ORDERS_JOURNAL_FILE = DATA_DIR + "/orders.journal";
+    private static final String ORDERS_SNAPSHOT_FILE = DATA_DIR + "/orders.bin";
+    private static final String ARCHIVE_DIR = DATA_DIR + "/archive";
+    private static final String NODES_DIR = DATA_DIR + "/nodes";
+
+    // Fold the journal back into orders.json after this many entries
+    private static final int JOURNAL_COMPACT_THRESHOLD = 500;
+
+    // Write-behind settings, overridable with -Dcafe.flushIntervalMs / -Dcafe.flushMaxChanges
+    private static final long FLUSH_INTERVAL_MS = Long.getLong("cafe.flushIntervalMs", 1000);
+    private static final int FLUSH_MAX_CHANGES = Integer.getInteger("cafe.flushMaxChanges", 100);
+
+    // Follow changes other processes make to the data files; -Dcafe.watch=false turns it off,
+    // which is only safe when no other process shares the data directory
+    private static final boolean WATCH_FILES = Boolean.parseBoolean(System.getProperty("cafe.watch", "true"));
+
+    // Completed orders older than this are moved out of memory into the archive
+    private static final long HOT_WINDOW_MS = Integer.getInteger("cafe.hotDays", 7) * 24L * 60 * 60 * 1000;
+
+    private final OrderJournal orderJournal;
+    private final OrderArchive orderArchive;
+    private final WriteBehindPersister persister;
+    private final ChangeBus changes = new ChangeBus();
+    private DataWatcher watcher;
+
+    // Modification time and size of each data file as last written or read here, so the
+    // watcher can tell our own writes from other processes'
+    private final Map<String, String> fileStamps = new ConcurrentHashMap<>();
+    // Users and products as they were in the file last written or read here (guarded by the
+    // write lock); an external edit is applied field by field against these
+    private Map<String, User> usersOnDisk = new HashMap<>();
+    private Map<String, Product> productsOnDisk = new HashMap<>();
+    // Keeps journal tails read by the watcher and the persister in file order
+    private final Object journalTailLock = new Object();
+
+    // Collections changed since the last flush (guarded by the write lock)
+    private boolean usersDirty;
+    private boolean productsDirty;
+    private boolean archivePending;
+    private volatile long lastFlushBytes;
+    private volatile long totalFlushBytes;
 
     private DataStore() {
         users = new ArrayList<>();
@@ -29,18 +138,45 @@ public class DataStore {
         // Create data directory if not exists
         new File(DATA_DIR).mkdirs();
 
+        // Claim a node id no other process on this data holds, before any order is made;
+        // it also marks this process's lines in the shared order journal
+        int node = NodeRegistry.claim(NODES_DIR, OrderIdGenerator.configuredNode(), OrderIdGenerator.MAX_NODE);
+        OrderIdGenerator.setNode(node);
+        System.out.println("Order ids use node " + node);
+
+        orderJournal = new OrderJournal(ORDERS_JOURNAL_FILE, ORDERS_FILE, ORDERS_SNAPSHOT_FILE, node);
+        orderArchive = new OrderArchive(ARCHIVE_DIR);
+        persister = new WriteBehindPersister(this::writeDirtyData, FLUSH_INTERVAL_MS, FLUSH_MAX_CHANGES);
+
         // Try to load existing data, otherwise seed
+        // (loading indexes the products itself, before it resolves the orders against them)
         if (!loadAllData()) {
             seedData();
+            rebuildIndexes();
             saveAllData();
         }
+        rebuildOrderIndexes();
+        archivedStats = orderArchive.getTotals(productsById);
+        publishTotals();
+
+        // Move completed history out of the hot set on the first flush
+        archivePending = orders.stream().anyMatch(this::isCold);
+        if (archivePending) {
+            persister.markDirty();
+        }
+
+        if (WATCH_FILES) {
+            startWatcher();
+        }
+    }
+
+    // Created on first use; class initialization makes this thread-safe without locking
+    private static class Holder {
+        private static final DataStore INSTANCE = new DataStore();
     }
 
     public static DataStore getInstance() {
-        if (instance == null) {
-            instance = new DataStore();
-        }
-        return instance;
+        return Holder.INSTANCE;
     }
 
     // ==================== Data Persistence (JSON) ====================
@@ -56,40 +192,672 @@ public class DataStore {
             }
 
             // Load users
+            rememberFile(USERS_FILE);
             users = JsonHelper.readUsers(USERS_FILE);
+            usersOnDisk = copyUsers(users);
 
             // Load products
+            rememberFile(PRODUCTS_FILE);
             products = JsonHelper.readProducts(PRODUCTS_FILE);
+            productsOnDisk = copyProducts(products);
+            rebuildIndexes();
 
-            // Load orders (may not exist yet)
-            if (ordersFile.exists()) {
-                orders = JsonHelper.readOrders(ORDERS_FILE, products);
+            // Load orders (may not exist yet), preferring the binary snapshot unless
+            // orders.json was written after it
+            File snapshotFile = new File(ORDERS_SNAPSHOT_FILE);
+            boolean loaded = false;
+            if (snapshotFile.exists() && snapshotFile.lastModified() >= ordersFile.lastModified()) {
+                try {
+                    orders = BinarySnapshot.readOrders(ORDERS_SNAPSHOT_FILE, productsById);
+                    loaded = true;
+                } catch (IOException | RuntimeException e) {
+                    System.out.println("Could not read " + ORDERS_SNAPSHOT_FILE + ", using JSON: " + e.getMessage());
+                }
+            }
+            rememberFile(ORDERS_FILE);
+            if (!loaded && ordersFile.exists()) {
+                orders = JsonHelper.readOrders(ORDERS_FILE, productsById);
             }
 
+            // Apply orders placed or updated since the last snapshot
+            orderJournal.replay(orders, productsById);
+
             System.out.println("Data loaded from JSON files successfully!");
             return true;
         } catch (Exception e) {
             System.out.println("Could not load data: " + e.getMessage());
             e.printStackTrace();
+            // Keep the unreadable files for inspection instead of overwriting them with seed data
+            backupUnreadableFiles();
+            users = new ArrayList<>();
+            products = new ArrayList<>();
+            orders = new ArrayList<>();
             return false;
         }
     }
 
+    private void backupUnreadableFiles() {
+        String suffix = ".corrupt-" + System.currentTimeMillis();
+        for (String file : new String[] { USERS_FILE, PRODUCTS_FILE, ORDERS_FILE, ORDERS_SNAPSHOT_FILE,
+                ORDERS_JOURNAL_FILE }) {
+            File f = new File(file);
+            if (f.exists() && f.renameTo(new File(file + suffix))) {
+                System.out.println("Moved unreadable " + file + " to " + file + suffix);
+            }
+        }
+    }
+
+    /** Marks every collection dirty and schedules a write. */
     public void saveAllData() {
+        writeLock.lock();
         try {
-            // Save users
-            JsonHelper.writeUsers(users, USERS_FILE);
+            usersDirty = true;
+            productsDirty = true;
+            persister.markDirty();
+        } finally {
+            writeLock.unlock();
+        }
+    }
 
-            // Save products
-            JsonHelper.writeProducts(products, PRODUCTS_FILE);
+    /**
+     * Writes all pending changes and waits until they are on disk.
+     */
+    public void flush() {
+        persister.flush();
+    }
 
-            // Save orders
-            JsonHelper.writeOrders(orders, ORDERS_FILE);
+    /**
+     * Asks the background persister to write pending changes now.
+     * The future completes once everything changed so far is on disk, e.g. to
+     * confirm a checkout only after the order has been saved.
+     */
+    public CompletableFuture<Void> requestFlush() {
+        return persister.requestFlush();
+    }
 
-            System.out.println("Data saved to JSON files!");
-        } catch (Exception e) {
-            System.err.println("Error saving data: " + e.getMessage());
-            e.printStackTrace();
+    /** Flushes pending changes and stops the background persister. Call on shutdown. */
+    public void close() {
+        if (watcher != null) {
+            watcher.close();
+        }
+        persister.close();
+        changes.close();
+        try {
+            orderJournal.close();
+        } catch (IOException e) {
+            System.err.println("Error closing order journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the collections that changed since the last flush and the queued order
+     * journal entries. Runs on the persister thread: the data is serialized while
+     * holding the lock, and the files are written after releasing it.
+     */
+    private void writeDirtyData() {
+        StringBuilder usersJson = null;
+        StringBuilder productsJson = null;
+        List<String> journalEntries;
+        List<Order> ordersSnapshot = null;
+        String ordersStamp = null;
+        List<Order> coldOrders = Collections.emptyList();
+        Map<String, Product> productsCopy = null;
+        // Holding the tail lock, no journal lines can be read but not yet applied while
+        // the snapshot is taken; compaction carries over the ones after it
+        synchronized (journalTailLock) {
+            if (watcher != null) {
+                // Pick up entries another process appended, so the snapshot includes them
+                applyJournalChanges();
+            }
+            writeLock.lock();
+            try {
+                if (usersDirty) {
+                    usersJson = JsonHelper.usersJson(users);
+                    usersOnDisk = copyUsers(users);
+                    usersDirty = false;
+                }
+                if (productsDirty) {
+                    productsJson = JsonHelper.productsJson(products);
+                    productsOnDisk = copyProducts(products);
+                    productsDirty = false;
+                }
+                journalEntries = orderJournal.drainPending();
+                boolean compact = archivePending
+                        || orderJournal.size() + journalEntries.size() >= JOURNAL_COMPACT_THRESHOLD;
+                // An orders.json the watcher has not applied yet is missing from the snapshot;
+                // leave compaction to a later flush rather than overwrite it
+                ordersStamp = compact ? stampOf(ORDERS_FILE) : null;
+                if (ordersStamp != null && ordersStamp.equals(fileStamps.get(ORDERS_FILE))) {
+                    // Stock levels only live in the journal until products.json is rewritten
+                    if (productsJson == null) {
+                        productsJson = JsonHelper.productsJson(products);
+                        productsOnDisk = copyProducts(products);
+                    }
+                    coldOrders = takeColdOrders();
+                    ordersSnapshot = OrderJournal.snapshotOf(orders);
+                    orderJournal.markSnapshot();
+                    productsCopy = new HashMap<>(productsById);
+                    archivePending = false;
+                }
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+        long bytes = 0;
+        try {
+            bytes += orderJournal.write(journalEntries);
+            if (!coldOrders.isEmpty()) {
+                // Archive before the hot snapshot drops them, so they are never only in memory
+                bytes += orderArchive.archive(coldOrders, productsCopy);
+                SalesStats archived = orderArchive.getTotals(productsCopy);
+                writeLock.lock();
+                try {
+                    for (Order o : coldOrders) {
+                        hotStats.remove(o);
+                        hotRollup.remove(o);
+                        archivedRollups.remove(OrderArchive.monthOf(o));
+                    }
+                    archiveGeneration++;
+                    archivedStats = archived;
+                    publishTotals();
+                    for (Order o : coldOrders) {
+                        changes.publish(StoreEvent.Type.ORDER_ARCHIVED, o.getOrderId());
+                    }
+                } finally {
+                    writeLock.unlock();
+                }
+            }
+        } catch (IOException e) {
+            // Nothing new is durable: put it all back and fail the flush, so whoever waits
+            // on it hears about it and the persister tries again
+            writeLock.lock();
+            try {
+                orderJournal.requeue(journalEntries);
+                orders.addAll(0, coldOrders);
+                ordersView = null;
+                rebuildOrderIndexes();
+                usersDirty |= usersJson != null;
+                productsDirty |= productsJson != null;
+                archivePending |= !coldOrders.isEmpty();
+            } finally {
+                writeLock.unlock();
+            }
+            throw new UncheckedIOException("Error writing order journal or archive", e);
+        }
+        try {
+            if (usersJson != null) {
+                bytes += JsonHelper.writeFile(USERS_FILE, usersJson);
+                rememberFile(USERS_FILE);
+                usersJson = null;
+            }
+            if (productsJson != null) {
+                bytes += JsonHelper.writeFile(PRODUCTS_FILE, productsJson);
+                rememberFile(PRODUCTS_FILE);
+                productsJson = null;
+            }
+            if (ordersSnapshot != null) {
+                String snapshotStamp = ordersStamp;
+                bytes += orderJournal.compact(ordersSnapshot, () -> stampOf(ORDERS_FILE).equals(snapshotStamp),
+                        () -> rememberFile(ORDERS_FILE));
+            }
+        } catch (IOException e) {
+            // Keep whatever was not written dirty so the next flush retries it
+            writeLock.lock();
+            try {
+                usersDirty |= usersJson != null;
+                productsDirty |= productsJson != null;
+            } finally {
+                writeLock.unlock();
+            }
+            throw new UncheckedIOException("Error saving data", e);
+        }
+        if (bytes > 0) {
+            System.out.println("Data saved to JSON files! (" + bytes + " bytes)");
+        }
+        lastFlushBytes = bytes;
+        totalFlushBytes += bytes;
+    }
+
+    /** Bytes written by the most recent flush. */
+    public long getLastFlushBytes() {
+        return lastFlushBytes;
+    }
+
+    /** Bytes written by all flushes since startup, including order journal appends. */
+    public long getTotalBytesWritten() {
+        return totalFlushBytes;
+    }
+
+    /** Completed orders that have aged out of the hot window. */
+    private boolean isCold(Order o) {
+        return (o.getStatus() == OrderStatus.DELIVERED || o.getStatus() == OrderStatus.CANCELLED)
+                && o.getCreatedTime() < System.currentTimeMillis() - HOT_WINDOW_MS;
+    }
+
+    /**
+     * Removes and returns the cold orders from the hot set. Caller holds the write lock.
+     * They stay in the hot statistics until the archive has them.
+     */
+    private List<Order> takeColdOrders() {
+        List<Order> cold = new ArrayList<>();
+        ordersView = null;
+        orders.removeIf(o -> {
+            if (isCold(o)) {
+                cold.add(o);
+                unindexOrder(o);
+                return true;
+            }
+            return false;
+        });
+        return cold;
+    }
+
+    // ==================== External Changes ====================
+
+    private void startWatcher() {
+        try {
+            watcher = new DataWatcher(Path.of(DATA_DIR),
+                    Set.of(fileName(USERS_FILE), fileName(PRODUCTS_FILE), fileName(ORDERS_FILE),
+                            fileName(ORDERS_JOURNAL_FILE)),
+                    this::applyExternalChanges);
+            watcher.start();
+        } catch (IOException e) {
+            System.err.println("Not watching " + DATA_DIR + " for changes: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Applies what another process changed in the data files, record by record, and
+     * publishes the changes so open dashboards update. Runs on the watcher thread.
+     * Files last written or read by this process are skipped.
+     */
+    private void applyExternalChanges(Set<String> names) {
+        try {
+            // Products first, since orders refer to them
+            if (names.contains(fileName(PRODUCTS_FILE)) && changedOnDisk(PRODUCTS_FILE)) {
+                applyProductsFile();
+            }
+            if (names.contains(fileName(USERS_FILE)) && changedOnDisk(USERS_FILE)) {
+                applyUsersFile();
+            }
+            if (names.contains(fileName(ORDERS_FILE)) && changedOnDisk(ORDERS_FILE)) {
+                applyOrdersFile();
+            }
+            if (names.contains(fileName(ORDERS_JOURNAL_FILE))) {
+                applyJournalChanges();
+            }
+        } catch (IOException | RuntimeException e) {
+            // Possibly caught halfway through a write; the next change event retries
+            System.err.println("Could not apply changed data files: " + e.getMessage());
+        }
+    }
+
+    /** Applies the products added, edited or removed in products.json since we last saw it. */
+    private void applyProductsFile() throws IOException {
+        String stamp = stampOf(PRODUCTS_FILE);
+        List<Product> onDisk = JsonHelper.readProducts(PRODUCTS_FILE);
+        int changed = 0;
+        writeLock.lock();
+        try {
+            Map<String, Product> seen = new HashMap<>();
+            for (Product fromFile : onDisk) {
+                if (seen.putIfAbsent(fromFile.getId(), fromFile) != null) {
+                    continue;
+                }
+                Product before = productsOnDisk.get(fromFile.getId());
+                Product p = productsById.get(fromFile.getId());
+                if (p == null) {
+                    if (before != null) {
+                        continue; // Removed here since; keep it removed
+                    }
+                    Product added = copyOf(fromFile);
+                    products.add(added);
+                    productsById.putIfAbsent(added.getId(), added);
+                    searchIndex.add(added);
+                    changes.publish(StoreEvent.Type.PRODUCT_CHANGED, added.getId());
+                    changed++;
+                } else if (applyProductFields(p, before, fromFile)) {
+                    searchIndex.update(p);
+                    changed++;
+                }
+            }
+            for (String id : productsOnDisk.keySet()) {
+                Product p = productsById.get(id);
+                if (!seen.containsKey(id) && p != null) {
+                    products.remove(p);
+                    unindexProduct(p, id);
+                    searchIndex.remove(p);
+                    changes.publish(StoreEvent.Type.PRODUCT_CHANGED, id);
+                    changed++;
+                }
+            }
+            productsOnDisk = copyProducts(onDisk);
+            productsView = null;
+        } finally {
+            writeLock.unlock();
+        }
+        fileStamps.put(PRODUCTS_FILE, stamp);
+        if (changed > 0) {
+            System.out.println("Applied " + changed + " changed products from " + PRODUCTS_FILE);
+        }
+    }
+
+    /**
+     * Copies the fields that differ between the old and new file version onto the
+     * product, leaving fields that only changed here alone. Caller holds the write lock.
+     *
+     * @return true if anything changed
+     */
+    private boolean applyProductFields(Product p, Product before, Product after) {
+        boolean edited = false;
+        if (before == null || !before.getName().equals(after.getName())) {
+            edited |= !p.getName().equals(after.getName());
+            p.setName(after.getName());
+        }
+        if (before == null || before.getPrice() != after.getPrice()) {
+            edited |= p.getPrice() != after.getPrice();
+            p.setPrice(after.getPrice());
+        }
+        if (before == null || !before.getDescription().equals(after.getDescription())) {
+            edited |= !p.getDescription().equals(after.getDescription());
+            p.setDescription(after.getDescription());
+        }
+        if (before == null || before.getCategory() != after.getCategory()) {
+            edited |= p.getCategory() != after.getCategory();
+            p.setCategory(after.getCategory());
+        }
+        boolean restocked = (before == null || before.getStock() != after.getStock())
+                && p.getStock() != after.getStock();
+        if (restocked) {
+            try {
+                p.setStock(after.getStock());
+                changes.publish(StoreEvent.Type.STOCK_CHANGED, p.getId());
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                System.err.println("Keeping stock of " + p.getId() + ": " + e.getMessage());
+            }
+        }
+        if (edited) {
+            changes.publish(StoreEvent.Type.PRODUCT_CHANGED, p.getId());
+        }
+        return edited || restocked;
+    }
+
+    /** Applies the users added, edited or removed in users.json since we last saw it. */
+    private void applyUsersFile() throws IOException {
+        String stamp = stampOf(USERS_FILE);
+        List<User> onDisk = JsonHelper.readUsers(USERS_FILE);
+        int changed = 0;
+        writeLock.lock();
+        try {
+            Map<String, User> seen = new HashMap<>();
+            for (User fromFile : onDisk) {
+                if (seen.putIfAbsent(fromFile.getUsername(), fromFile) != null) {
+                    continue;
+                }
+                User before = usersOnDisk.get(fromFile.getUsername());
+                User u = usersByName.get(fromFile.getUsername());
+                if (u == null) {
+                    if (before != null) {
+                        continue; // Removed here since; keep it removed
+                    }
+                    User added = new User(fromFile.getUsername(), fromFile.getPassword(), fromFile.getRole());
+                    users.add(added);
+                    usersByName.putIfAbsent(added.getUsername(), added);
+                } else if (before == null || !before.getPassword().equals(fromFile.getPassword())
+                        || !before.getRole().equals(fromFile.getRole())) {
+                    if (u.getPassword().equals(fromFile.getPassword()) && u.getRole().equals(fromFile.getRole())) {
+                        continue;
+                    }
+                    u.setPassword(fromFile.getPassword());
+                    u.setRole(fromFile.getRole());
+                } else {
+                    continue;
+                }
+                changes.publish(StoreEvent.Type.USER_CHANGED, fromFile.getUsername());
+                changed++;
+            }
+            for (String name : usersOnDisk.keySet()) {
+                User u = usersByName.get(name);
+                if (!seen.containsKey(name) && u != null) {
+                    users.remove(u);
+                    usersByName.remove(name, u);
+                    changes.publish(StoreEvent.Type.USER_CHANGED, name);
+                    changed++;
+                }
+            }
+            usersOnDisk = copyUsers(onDisk);
+            usersView = null;
+        } finally {
+            writeLock.unlock();
+        }
+        fileStamps.put(USERS_FILE, stamp);
+        if (changed > 0) {
+            System.out.println("Applied " + changed + " changed users from " + USERS_FILE);
+        }
+    }
+
+    /**
+     * Applies orders.json after another process compacted or replaced it: orders not
+     * known here are added, and known ones only ever move forward in status.
+     */
+    private void applyOrdersFile() throws IOException {
+        String stamp = stampOf(ORDERS_FILE);
+        List<Order> onDisk = JsonHelper.readOrders(ORDERS_FILE, productsById);
+        int changed = 0;
+        writeLock.lock();
+        try {
+            for (Order o : onDisk) {
+                if (applyExternalOrder(o)) {
+                    changed++;
+                }
+            }
+            publishTotals();
+        } finally {
+            writeLock.unlock();
+        }
+        fileStamps.put(ORDERS_FILE, stamp);
+        if (changed > 0) {
+            System.out.println("Applied " + changed + " changed orders from " + ORDERS_FILE);
+        }
+    }
+
+    /** Applies the order journal entries other processes appended since the last call. */
+    private void applyJournalChanges() {
+        synchronized (journalTailLock) {
+            List<String> lines;
+            try {
+                lines = orderJournal.readForeignEntries();
+            } catch (IOException e) {
+                System.err.println("Could not read " + ORDERS_JOURNAL_FILE + ": " + e.getMessage());
+                return;
+            }
+            if (!lines.isEmpty()) {
+                applyJournalLines(lines);
+            }
+        }
+    }
+
+    private void applyJournalLines(List<String> lines) {
+        writeLock.lock();
+        try {
+            for (String line : lines) {
+                OrderJournal.Entry entry;
+                try {
+                    entry = OrderJournal.Entry.parse(line, productsById);
+                } catch (IOException | IllegalArgumentException e) {
+                    System.err.println("Skipping unreadable journal entry: " + e.getMessage());
+                    continue;
+                }
+                for (Map.Entry<String, Integer> level : entry.stock.entrySet()) {
+                    Product p = productsById.get(level.getKey());
+                    if (p != null && p.getStock() != level.getValue()) {
+                        try {
+                            p.setStock(level.getValue());
+                            changes.publish(StoreEvent.Type.STOCK_CHANGED, p.getId());
+                        } catch (IllegalArgumentException | IllegalStateException e) {
+                            System.err.println("Keeping stock of " + p.getId() + ": " + e.getMessage());
+                        }
+                    }
+                }
+                if (entry.order != null) {
+                    applyExternalOrder(entry.order);
+                } else if (entry.orderId != null) {
+                    Order existing = ordersById.get(entry.orderId);
+                    if (existing != null && existing.getStatus() != entry.status) {
+                        applyExternalStatus(existing, entry.status);
+                    }
+                }
+            }
+            publishTotals();
+        } finally {
+            writeLock.unlock();
+        }
+        System.out.println("Applied " + lines.size() + " order journal entries from another process");
+    }
+
+    /**
+     * Adds an order written by another process, or moves a known one forward to the
+     * status it has there. Caller holds the write lock and republishes the totals.
+     *
+     * @return true if anything changed
+     */
+    private boolean applyExternalOrder(Order o) {
+        Order existing = ordersById.get(o.getOrderId());
+        if (existing == null) {
+            if (isCold(o)) {
+                return false; // Already history; the archive has it or will
+            }
+            orders.add(o);
+            ordersView = null;
+            indexOrder(o);
+            hotStats.add(o);
+            hotRollup.add(o);
+            changes.publish(StoreEvent.Type.ORDER_ADDED, o.getOrderId());
+            return true;
+        }
+        if (o.getStatus().ordinal() > existing.getStatus().ordinal()) {
+            applyExternalStatus(existing, o.getStatus());
+            return true;
+        }
+        return false;
+    }
+
+    /** Like {@link #updateOrderStatus}, without journaling. Caller holds the write lock. */
+    private void applyExternalStatus(Order o, OrderStatus status) {
+        OrderStatus oldStatus = o.getStatus();
+        ordersByStatus.get(oldStatus).remove(o);
+        o.setStatus(status);
+        ordersByStatus.get(status).add(o);
+        hotStats.statusChanged(o, oldStatus, status);
+        hotRollup.statusChanged(o, oldStatus, status);
+        changes.publish(StoreEvent.Type.ORDER_STATUS_CHANGED, o.getOrderId());
+    }
+
+    private void rememberFile(String file) {
+        fileStamps.put(file, stampOf(file));
+    }
+
+    private boolean changedOnDisk(String file) {
+        return !stampOf(file).equals(fileStamps.get(file));
+    }
+
+    /** Modification time and size, or "missing". */
+    private static String stampOf(String file) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(Path.of(file), BasicFileAttributes.class);
+            return attributes.lastModifiedTime() + "/" + attributes.size();
+        } catch (IOException e) {
+            return "missing";
+        }
+    }
+
+    private static String fileName(String file) {
+        return Path.of(file).getFileName().toString();
+    }
+
+    private static Product copyOf(Product p) {
+        return new Product(p.getId(), p.getName(), p.getPrice(), p.getDescription(), p.getStock(), p.getCategory());
+    }
+
+    private static Map<String, Product> copyProducts(List<Product> list) {
+        Map<String, Product> copies = new HashMap<>();
+        for (Product p : list) {
+            copies.putIfAbsent(p.getId(), copyOf(p));
+        }
+        return copies;
+    }
+
+    private static Map<String, User> copyUsers(List<User> list) {
+        Map<String, User> copies = new HashMap<>();
+        for (User u : list) {
+            copies.putIfAbsent(u.getUsername(), new User(u.getUsername(), u.getPassword(), u.getRole()));
+        }
+        return copies;
+    }
+
+    // ==================== Indexes ====================
+
+    /** Rebuilds the lookup maps from the lists; the first entry wins on duplicate keys. */
+    private void rebuildIndexes() {
+        productsById.clear();
+        searchIndex.clear();
+        for (Product p : products) {
+            productsById.putIfAbsent(p.getId(), p);
+            searchIndex.add(p);
+        }
+        usersByName.clear();
+        for (User u : users) {
+            usersByName.putIfAbsent(u.getUsername(), u);
+        }
+    }
+
+    /** Drops the index entry for a product, falling back to another product with the same id. */
+    private void unindexProduct(Product p, String id) {
+        if (productsById.remove(id, p)) {
+            for (Product other : products) {
+                if (other != p && other.getId().equals(id)) {
+                    productsById.put(id, other);
+                    break;
+                }
+            }
+        }
+    }
+
+    private void rebuildOrderIndexes() {
+        hotStats.clear();
+        hotRollup.clear();
+        for (Order o : orders) {
+            hotStats.add(o);
+            hotRollup.add(o);
+        }
+        publishTotals();
+        ordersByStatus.clear();
+        for (OrderStatus status : OrderStatus.values()) {
+            ordersByStatus.put(status, new LinkedHashSet<>());
+        }
+        ordersByBuyer.clear();
+        ordersById.clear();
+        for (Order o : orders) {
+            indexOrder(o);
+        }
+    }
+
+    private void indexOrder(Order o) {
+        ordersById.put(o.getOrderId(), o);
+        ordersByStatus.get(o.getStatus()).add(o);
+        ordersByBuyer.computeIfAbsent(o.getBuyerUsername(), b -> new TreeSet<>(OrderPage.BY_PLACEMENT)).add(o);
+    }
+
+    private void unindexOrder(Order o) {
+        ordersById.remove(o.getOrderId(), o);
+        ordersByStatus.get(o.getStatus()).remove(o);
+        NavigableSet<Order> buyerOrders = ordersByBuyer.get(o.getBuyerUsername());
+        if (buyerOrders != null) {
+            buyerOrders.remove(o);
+            if (buyerOrders.isEmpty()) {
+                ordersByBuyer.remove(o.getBuyerUsername());
+            }
         }
     }
 
@@ -118,21 +886,30 @@ public class DataStore {
     // ==================== Authentication ====================
 
     public User authenticate(String username, String password) {
-        return users.stream()
-                .filter(u -> u.getUsername().equals(username) && u.getPassword().equals(password))
-                .findFirst()
-                .orElse(null);
+        User u = usersByName.get(username);
+        return u != null && u.getPassword().equals(password) ? u : null;
     }
 
     // ==================== Product Methods ====================
 
+    /** Immutable snapshot of the products; cheap to call repeatedly. */
     public List<Product> getProducts() {
-        return products;
+        List<Product> view = productsView;
+        if (view == null) {
+            readLock.lock();
+            try {
+                view = List.copyOf(products);
+                productsView = view;
+            } finally {
+                readLock.unlock();
+            }
+        }
+        return view;
     }
 
     public List<Product> getProductsByCategory(Category category) {
         List<Product> result = new ArrayList<>();
-        for (Product p : products) {
+        for (Product p : getProducts()) {
             if (p.getCategory() == category) {
                 result.add(p);
             }
@@ -141,104 +918,697 @@ public class DataStore {
     }
 
     public List<Product> searchProducts(String keyword) {
-        List<Product> result = new ArrayList<>();
-        String lower = keyword.toLowerCase();
-        for (Product p : products) {
-            if (p.getName().toLowerCase().contains(lower) ||
-                    p.getDescription().toLowerCase().contains(lower)) {
-                result.add(p);
-            }
+        return searchProducts(keyword, null);
+    }
+
+    /**
+     * Products whose name or description contains the keyword, ignoring case.
+     * Answered from an n-gram index instead of scanning every product.
+     *
+     * @param category only products in this category, or null for all
+     */
+    public List<Product> searchProducts(String keyword, Category category) {
+        readLock.lock();
+        try {
+            return searchIndex.search(keyword, category);
+        } finally {
+            readLock.unlock();
         }
-        return result;
+    }
+
+    public Product findProduct(String id) {
+        return productsById.get(id);
     }
 
     public void addProduct(Product p) {
-        products.add(p);
-        saveAllData();
+        writeLock.lock();
+        try {
+            products.add(p);
+            productsView = null;
+            productsById.putIfAbsent(p.getId(), p);
+            searchIndex.add(p);
+            orderJournal.appendStock(p);
+            productsDirty = true;
+            persister.markDirty();
+            changes.publish(StoreEvent.Type.PRODUCT_CHANGED, p.getId());
+        } finally {
+            writeLock.unlock();
+        }
     }
 
     public void removeProduct(Product p) {
-        products.remove(p);
-        saveAllData();
+        writeLock.lock();
+        try {
+            products.remove(p);
+            productsView = null;
+            unindexProduct(p, p.getId());
+            searchIndex.remove(p);
+            productsDirty = true;
+            persister.markDirty();
+            changes.publish(StoreEvent.Type.PRODUCT_CHANGED, p.getId());
+        } finally {
+            writeLock.unlock();
+        }
     }
 
+    /**
+     * Applies the edited values to the existing product in place, so orders that
+     * reference it keep pointing at the same instance.
+     */
     public void updateProduct(Product oldProduct, Product newProduct) {
-        int index = products.indexOf(oldProduct);
-        if (index >= 0) {
-            products.set(index, newProduct);
-            saveAllData();
+        writeLock.lock();
+        try {
+            if (products.contains(oldProduct)) {
+                // First, so a level below what carts hold is refused before anything changes
+                oldProduct.setStock(newProduct.getStock());
+                // The id may change, so move the index entry along with it
+                String oldId = oldProduct.getId();
+                oldProduct.setId(newProduct.getId());
+                unindexProduct(oldProduct, oldId);
+                productsById.putIfAbsent(oldProduct.getId(), oldProduct);
+                oldProduct.setName(newProduct.getName());
+                oldProduct.setPrice(newProduct.getPrice());
+                oldProduct.setDescription(newProduct.getDescription());
+                oldProduct.setCategory(newProduct.getCategory());
+                searchIndex.update(oldProduct);
+                orderJournal.appendStock(oldProduct);
+                productsDirty = true;
+                persister.markDirty();
+                if (!oldId.equals(oldProduct.getId())) {
+                    changes.publish(StoreEvent.Type.PRODUCT_CHANGED, oldId);
+                }
+                changes.publish(StoreEvent.Type.PRODUCT_CHANGED, oldProduct.getId());
+            }
+        } finally {
+            writeLock.unlock();
         }
     }
 
     public void updateProductStock(String productId, int quantitySold) {
-        Optional<Product> p = products.stream().filter(prod -> prod.getId().equals(productId)).findFirst();
-        p.ifPresent(product -> {
-            product.setStock(product.getStock() - quantitySold);
-            saveAllData();
-        });
+        writeLock.lock();
+        try {
+            Product product = productsById.get(productId);
+            if (product != null) {
+                product.setStock(product.getStock() - quantitySold);
+                // The journal carries the new level; products.json catches up on compaction
+                orderJournal.appendStock(product);
+                persister.markDirty();
+                changes.publish(StoreEvent.Type.STOCK_CHANGED, productId);
+            }
+        } finally {
+            writeLock.unlock();
+        }
     }
 
     // ==================== Order Methods ====================
 
+    /**
+     * Returns the hot orders: everything still in progress plus recently completed
+     * orders. Older history lives in the archive, see {@link #getArchivedOrders}.
+     * Returns an immutable snapshot; the orders in it are the live objects, so their
+     * status is always current.
+     */
     public List<Order> getOrders() {
-        return orders;
+        List<Order> view = ordersView;
+        if (view == null) {
+            readLock.lock();
+            try {
+                view = List.copyOf(orders);
+                ordersView = view;
+            } finally {
+                readLock.unlock();
+            }
+        }
+        return view;
+    }
+
+    /** Months that have archived orders, newest first. */
+    public List<YearMonth> getArchivedMonths() {
+        return orderArchive.getMonths();
+    }
+
+    /**
+     * Loads the archived orders of one month (oldest first) from disk, or from cache.
+     * Returns an empty list if the segment cannot be read.
+     */
+    public List<Order> getArchivedOrders(YearMonth month) {
+        return loadArchived(month);
+    }
+
+    // The archive guards itself, so segments are read without holding the store lock
+    private List<Order> loadArchived(YearMonth month) {
+        try {
+            return orderArchive.load(month, productsById);
+        } catch (IOException e) {
+            System.err.println("Could not load archived orders for " + month + ": " + e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    /** Start of a month in epoch millis, in the zone the archive files orders by. */
+    private static long startOf(YearMonth month) {
+        return month.atDay(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /** Looks up a hot order by id; returns null if it is unknown or archived. */
+    public Order findOrder(String orderId) {
+        readLock.lock();
+        try {
+            return ordersById.get(orderId);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /** Hot orders with the given status, in the order they were placed. */
+    public List<Order> getOrdersByStatus(OrderStatus status) {
+        readLock.lock();
+        try {
+            return new ArrayList<>(ordersByStatus.get(status));
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /** Number of hot orders with the given status. */
+    public int countOrdersByStatus(OrderStatus status) {
+        readLock.lock();
+        try {
+            return ordersByStatus.get(status).size();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /** Hot orders placed by the given buyer, in the order they were placed. */
+    public List<Order> getOrdersByBuyer(String buyerUsername) {
+        readLock.lock();
+        try {
+            NavigableSet<Order> buyerOrders = ordersByBuyer.get(buyerUsername);
+            return buyerOrders == null ? new ArrayList<>() : new ArrayList<>(buyerOrders);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * One page of a buyer's orders, hot and archived alike, newest first.
+     * Pass null for the newest page, then each page's next cursor. Pages are cut at the
+     * last order shown, so orders placed meanwhile do not shift them. A page reads at
+     * most one archive month from disk; if that leaves it short, its cursor continues
+     * at the start of that month.
+     *
+     * @throws IllegalArgumentException if the cursor is malformed or the limit is not positive
+     */
+    public OrderPage getOrderHistory(String buyerUsername, String cursor, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit must be positive");
+        }
+        Order key = cursor == null ? null : OrderPage.keyOf(cursor);
+        // One extra order tells whether there is another page
+        int want = limit + 1;
+        List<Order> page = new ArrayList<>(want);
+        readLock.lock();
+        try {
+            NavigableSet<Order> hot = ordersByBuyer.get(buyerUsername);
+            if (hot != null) {
+                Iterator<Order> it = (key == null ? hot : hot.headSet(key, false)).descendingIterator();
+                while (it.hasNext() && page.size() < want) {
+                    page.add(it.next());
+                }
+            }
+        } finally {
+            readLock.unlock();
+        }
+
+        // Merge in archived months, newest first, until no older month can change the page.
+        // Read without the lock; an order archived meanwhile may be in both, so keep one.
+        Set<String> hotIds = new HashSet<>();
+        for (Order o : page) {
+            hotIds.add(o.getOrderId());
+        }
+        YearMonth loaded = null;
+        for (YearMonth month : orderArchive.getMonths()) {
+            long start = startOf(month);
+            // Skip months with nothing before the cursor; a month boundary cursor excludes its month
+            if (key != null && (start > key.getCreatedTime()
+                    || start == key.getCreatedTime() && key.getOrderId().isEmpty())) {
+                continue;
+            }
+            if (page.size() >= want && page.get(want - 1).getCreatedTime() >= startOf(month.plusMonths(1))) {
+                break;
+            }
+            if (loaded != null) {
+                // Keep what is newer than the month already read; the rest comes next page
+                long boundary = startOf(loaded);
+                page.removeIf(o -> o.getCreatedTime() < boundary);
+                if (page.size() <= limit) {
+                    return new OrderPage(page, OrderPage.cursorBefore(boundary));
+                }
+                break;
+            }
+            for (Order o : loadArchived(month)) {
+                if (o.getBuyerUsername().equals(buyerUsername) && !hotIds.contains(o.getOrderId())
+                        && (key == null || OrderPage.BY_PLACEMENT.compare(o, key) < 0)) {
+                    page.add(o);
+                }
+            }
+            page.sort(OrderPage.BY_PLACEMENT.reversed());
+            loaded = month;
+        }
+        if (page.size() > limit) {
+            page.subList(limit, page.size()).clear();
+            return new OrderPage(page, OrderPage.cursorBefore(page.get(limit - 1)));
+        }
+        // Every hot order and archived month before the cursor went into this page
+        return new OrderPage(page, null);
+    }
+
+    /**
+     * Places an order and takes its items out of stock as one change.
+     * The stock is reserved for all items or none, and the order is written together
+     * with the new stock levels as a single journal entry, so after a crash either all
+     * of the checkout is there or none of it.
+     *
+     * @return the placed order
+     * @throws IllegalStateException if a product is gone or does not have enough stock
+     */
+    public Order checkout(String buyerUsername, String roomName, List<CartItem> items) {
+        writeLock.lock();
+        try {
+            Map<Product, Integer> quantities = resolveItems(items, false);
+            List<Product> reserved = new ArrayList<>();
+            for (Map.Entry<Product, Integer> entry : quantities.entrySet()) {
+                if (!entry.getKey().getStockCounter().tryReserve(entry.getValue())) {
+                    for (Product p : reserved) {
+                        p.getStockCounter().release(quantities.get(p));
+                    }
+                    throw new IllegalStateException("Not enough stock for " + entry.getKey().getName());
+                }
+                reserved.add(entry.getKey());
+            }
+            return placeOrder(buyerUsername, roomName, items, quantities);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Like {@link #checkout}, for items whose stock the holder already reserved through
+     * {@link #reserveStock}. On failure the reservations are left for the holder to release.
+     *
+     * @throws IllegalStateException if the holder has not reserved all of the items
+     */
+    public Order checkoutReserved(String holder, String buyerUsername, String roomName, List<CartItem> items) {
+        writeLock.lock();
+        try {
+            Map<Product, Integer> quantities = resolveItems(items, true);
+            // Check everything before committing anything
+            Map<Product, Integer> held = reservations.getOrDefault(holder, Collections.emptyMap());
+            for (Map.Entry<Product, Integer> entry : quantities.entrySet()) {
+                if (held.getOrDefault(entry.getKey(), 0) < entry.getValue()) {
+                    throw new IllegalStateException("Stock for " + entry.getKey().getName() + " is not reserved");
+                }
+            }
+            for (Map.Entry<Product, Integer> entry : quantities.entrySet()) {
+                unhold(holder, entry.getKey(), entry.getValue());
+            }
+            return placeOrder(buyerUsername, roomName, items, quantities);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Holds stock for a cart without taking the store lock. Safe to call from many
+     * threads; never reserves more than is available.
+     *
+     * @param holder the cart the stock is held for
+     * @return false if there is not enough unreserved stock
+     * @throws IllegalArgumentException if the quantity is not positive
+     */
+    public boolean reserveStock(String holder, Product p, int quantity) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Quantity must be positive: " + quantity);
+        }
+        if (!p.getStockCounter().tryReserve(quantity)) {
+            return false;
+        }
+        reservations.computeIfAbsent(holder, h -> new ConcurrentHashMap<>()).merge(p, quantity, Integer::sum);
+        changes.publish(StoreEvent.Type.STOCK_CHANGED, p.getId());
+        return true;
+    }
+
+    /**
+     * Gives back stock the holder reserved with {@link #reserveStock}.
+     *
+     * @throws IllegalStateException if the holder did not reserve that much of the product
+     */
+    public void releaseStock(String holder, Product p, int quantity) {
+        unhold(holder, p, quantity);
+        p.getStockCounter().release(quantity);
+        changes.publish(StoreEvent.Type.STOCK_CHANGED, p.getId());
+    }
+
+    /** Gives back everything the holder still has reserved, e.g. when its cart goes away. */
+    public void releaseAllStock(String holder) {
+        Map<Product, Integer> held = reservations.get(holder);
+        if (held == null) {
+            return;
+        }
+        for (Map.Entry<Product, Integer> entry : held.entrySet()) {
+            try {
+                releaseStock(holder, entry.getKey(), entry.getValue());
+            } catch (RuntimeException e) {
+                System.err.println("Could not release stock of " + entry.getKey().getId() + ": " + e.getMessage());
+            }
+        }
+        reservations.remove(holder, Collections.emptyMap());
+    }
+
+    /** Takes units off the holder's reservation, checking it holds them. */
+    private void unhold(String holder, Product p, int quantity) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Quantity must be positive: " + quantity);
+        }
+        Map<Product, Integer> held = reservations.get(holder);
+        if (held == null) {
+            throw new IllegalStateException("Stock for " + p.getName() + " is not reserved");
+        }
+        held.compute(p, (product, count) -> {
+            if (count == null || count < quantity) {
+                throw new IllegalStateException("Stock for " + p.getName() + " is not reserved");
+            }
+            return count == quantity ? null : count - quantity;
+        });
+    }
+
+    /**
+     * Resolves cart items against the store's products, adding up repeated lines.
+     * Reserved items must still refer to the store's current product instance,
+     * since that is where their reservation is held.
+     */
+    private Map<Product, Integer> resolveItems(List<CartItem> items, boolean reserved) {
+        if (items.isEmpty()) {
+            throw new IllegalArgumentException("Cart is empty");
+        }
+        Map<Product, Integer> quantities = new LinkedHashMap<>();
+        for (CartItem item : items) {
+            Product p = productsById.get(item.getProduct().getId());
+            if (p == null || (reserved && p != item.getProduct())) {
+                throw new IllegalStateException(item.getProduct().getName() + " is no longer available");
+            }
+            if (item.getQuantity() <= 0) {
+                throw new IllegalArgumentException("Quantity of " + p.getName() + " must be positive");
+            }
+            quantities.merge(p, item.getQuantity(), Integer::sum);
+        }
+        return quantities;
+    }
+
+    /** Commits the reserved stock and records the order. Caller holds the write lock. */
+    private Order placeOrder(String buyerUsername, String roomName, List<CartItem> items,
+            Map<Product, Integer> quantities) {
+        List<CartItem> lines = new ArrayList<>(items.size());
+        for (CartItem item : items) {
+            lines.add(new CartItem(productsById.get(item.getProduct().getId()), item.getQuantity()));
+        }
+        for (Map.Entry<Product, Integer> entry : quantities.entrySet()) {
+            entry.getKey().getStockCounter().commit(entry.getValue());
+            changes.publish(StoreEvent.Type.STOCK_CHANGED, entry.getKey().getId());
+        }
+        Order order = new Order(buyerUsername, roomName, lines);
+        orders.add(order);
+        ordersView = null;
+        indexOrder(order);
+        hotStats.add(order);
+        hotRollup.add(order);
+        publishTotals();
+        orderJournal.appendCheckout(order, quantities.keySet());
+        persister.markDirty();
+        changes.publish(StoreEvent.Type.ORDER_ADDED, order.getOrderId());
+        return order;
     }
 
     public void addOrder(Order o) {
-        orders.add(o);
-        saveAllData();
+        writeLock.lock();
+        try {
+            orders.add(o);
+            ordersView = null;
+            indexOrder(o);
+            hotStats.add(o);
+            hotRollup.add(o);
+            publishTotals();
+            orderJournal.appendOrder(o);
+            persister.markDirty();
+            changes.publish(StoreEvent.Type.ORDER_ADDED, o.getOrderId());
+        } finally {
+            writeLock.unlock();
+        }
     }
 
-    public void updateOrderStatus() {
-        saveAllData();
+    /**
+     * Moves a hot order to a new status.
+     *
+     * @throws IllegalStateException if the order is archived or otherwise unknown; its
+     *                               segment and the archived totals are final
+     */
+    public void updateOrderStatus(Order o, OrderStatus status) {
+        writeLock.lock();
+        try {
+            Order hot = ordersById.get(o.getOrderId());
+            if (hot == null) {
+                throw new IllegalStateException("Order " + o.getOrderId() + " is archived and can no longer change");
+            }
+            // Move the order between status sets
+            OrderStatus oldStatus = hot.getStatus();
+            ordersByStatus.get(oldStatus).remove(hot);
+            hot.setStatus(status);
+            // The caller may hold an older copy; let it follow
+            o.setStatus(status);
+            ordersByStatus.get(status).add(hot);
+            hotStats.statusChanged(hot, oldStatus, status);
+            hotRollup.statusChanged(hot, oldStatus, status);
+            publishTotals();
+            orderJournal.appendStatus(hot);
+            persister.markDirty();
+            changes.publish(StoreEvent.Type.ORDER_STATUS_CHANGED, hot.getOrderId());
+        } finally {
+            writeLock.unlock();
+        }
     }
 
     // ==================== User Management ====================
 
+    /** Immutable snapshot of the users. */
     public List<User> getUsers() {
-        return users;
+        List<User> view = usersView;
+        if (view == null) {
+            readLock.lock();
+            try {
+                view = List.copyOf(users);
+                usersView = view;
+            } finally {
+                readLock.unlock();
+            }
+        }
+        return view;
+    }
+
+    public User findUser(String username) {
+        return usersByName.get(username);
     }
 
     public void addUser(User u) {
-        users.add(u);
-        saveAllData();
+        writeLock.lock();
+        try {
+            users.add(u);
+            usersView = null;
+            usersByName.putIfAbsent(u.getUsername(), u);
+            usersDirty = true;
+            persister.markDirty();
+            changes.publish(StoreEvent.Type.USER_CHANGED, u.getUsername());
+        } finally {
+            writeLock.unlock();
+        }
     }
 
     public void removeUser(User u) {
-        users.remove(u);
-        saveAllData();
+        writeLock.lock();
+        try {
+            users.remove(u);
+            usersView = null;
+            if (usersByName.remove(u.getUsername(), u)) {
+                // Fall back to another user with the same name, if any
+                for (User other : users) {
+                    if (other.getUsername().equals(u.getUsername())) {
+                        usersByName.put(other.getUsername(), other);
+                        break;
+                    }
+                }
+            }
+            usersDirty = true;
+            persister.markDirty();
+            changes.publish(StoreEvent.Type.USER_CHANGED, u.getUsername());
+        } finally {
+            writeLock.unlock();
+        }
     }
 
     public void updateUser(User oldUser, User newUser) {
-        int index = users.indexOf(oldUser);
-        if (index >= 0) {
-            users.set(index, newUser);
-            saveAllData();
+        writeLock.lock();
+        try {
+            int index = users.indexOf(oldUser);
+            if (index >= 0) {
+                users.set(index, newUser);
+                usersView = null;
+                usersByName.remove(oldUser.getUsername(), oldUser);
+                usersByName.putIfAbsent(newUser.getUsername(), newUser);
+                usersDirty = true;
+                persister.markDirty();
+                if (!oldUser.getUsername().equals(newUser.getUsername())) {
+                    changes.publish(StoreEvent.Type.USER_CHANGED, oldUser.getUsername());
+                }
+                changes.publish(StoreEvent.Type.USER_CHANGED, newUser.getUsername());
+            }
+        } finally {
+            writeLock.unlock();
         }
     }
 
     public boolean usernameExists(String username) {
-        return users.stream().anyMatch(u -> u.getUsername().equals(username));
+        return usersByName.containsKey(username);
     }
 
     // ==================== Statistics ====================
+    // Read from running totals that cover both the hot orders and the archive.
 
     public double getTotalSales() {
-        return orders.stream()
-                .filter(o -> o.getStatus() == model.OrderStatus.DELIVERED)
-                .mapToDouble(Order::getTotalAmount)
-                .sum();
+        return totals.getTotalSales();
     }
 
     public int getTotalOrdersDelivered() {
-        return (int) orders.stream()
-                .filter(o -> o.getStatus() == model.OrderStatus.DELIVERED)
-                .count();
+        return (int) totals.getCount(OrderStatus.DELIVERED);
     }
 
     public int getPendingOrdersCount() {
-        return (int) orders.stream()
-                .filter(o -> o.getStatus() == model.OrderStatus.PENDING)
-                .count();
+        // Pending orders are never archived
+        return (int) totals.getCount(OrderStatus.PENDING);
+    }
+
+    /**
+     * Delivered sales per bucket over [from, to), hot and archived, one point per bucket.
+     * @param category null for all categories
+     */
+    public List<SalesRollup.Point> getSalesSeries(SalesRollup.Granularity granularity, long from, long to,
+            Category category) {
+        return withRollups(granularity.bucketStart(from), to, archived -> {
+            List<SalesRollup.Point> series = hotRollup.series(granularity, from, to, category);
+            for (SalesRollup month : archived) {
+                SalesRollup.addSeries(series, month.series(granularity, from, to, category));
+            }
+            return series;
+        });
+    }
+
+    /** Delivered sales per product name over [from, to), best selling first. */
+    public Map<String, SalesRollup.Totals> getProductSales(SalesRollup.Granularity granularity, long from, long to) {
+        return withRollups(granularity.bucketStart(from), to, archived -> {
+            List<Map<String, SalesRollup.Totals>> parts = new ArrayList<>();
+            parts.add(hotRollup.byProduct(granularity, from, to));
+            for (SalesRollup month : archived) {
+                parts.add(month.byProduct(granularity, from, to));
+            }
+            return SalesRollup.mergeProducts(parts);
+        });
+    }
+
+    /**
+     * Runs a query over the hot rollup and the rollups of the archived months overlapping
+     * [from, to) under the read lock. Months not rolled up yet are read from disk first,
+     * with the lock released; if an archive run lands meanwhile, it starts over.
+     */
+    private <T> T withRollups(long from, long to, Function<List<SalesRollup>, T> query) {
+        while (true) {
+            long generation = archiveGeneration;
+            List<YearMonth> months = archivedMonths(from, to);
+            readLock.lock();
+            try {
+                List<SalesRollup> archived = cachedRollups(months);
+                if (archived != null && generation == archiveGeneration) {
+                    return query.apply(archived);
+                }
+            } finally {
+                readLock.unlock();
+            }
+            loadRollups(months);
+        }
+    }
+
+    /** Rollups of the given archived months, or null if one is not built yet. */
+    private List<SalesRollup> cachedRollups(List<YearMonth> months) {
+        List<SalesRollup> rollups = new ArrayList<>();
+        for (YearMonth month : months) {
+            SalesRollup rollup = archivedRollups.get(month);
+            if (rollup == null) {
+                return null;
+            }
+            rollups.add(rollup);
+        }
+        return rollups;
+    }
+
+    /**
+     * Builds the missing rollups of the given archived months. Called without the lock;
+     * a rollup read before an archive run changed its month is dropped.
+     */
+    private void loadRollups(List<YearMonth> months) {
+        for (YearMonth month : months) {
+            if (archivedRollups.containsKey(month)) {
+                continue;
+            }
+            long generation = archiveGeneration;
+            SalesRollup rollup = SalesRollup.of(loadArchived(month));
+            readLock.lock();
+            try {
+                if (generation == archiveGeneration) {
+                    archivedRollups.putIfAbsent(month, rollup);
+                }
+            } finally {
+                readLock.unlock();
+            }
+        }
+    }
+
+    private List<YearMonth> archivedMonths(long from, long to) {
+        List<YearMonth> months = new ArrayList<>();
+        for (YearMonth month : orderArchive.getMonths()) {
+            if (startOf(month) < to && startOf(month.plusMonths(1)) > from) {
+                months.add(month);
+            }
+        }
+        return months;
+    }
+
+    /** Publishes a fresh combined copy of the totals. Caller holds the write lock. */
+    private void publishTotals() {
+        SalesStats combined = new SalesStats();
+        combined.addAll(hotStats);
+        combined.addAll(archivedStats);
+        totals = combined;
+    }
+
+    // ==================== Change Events ====================
+
+    /**
+     * Delivers every change from now on to the listener, on the store's event thread.
+     * Events are published while the change is locked in, so they arrive in commit order.
+     */
+    public void addListener(StoreListener listener) {
+        changes.addListener(listener);
+    }
+
+    public void removeListener(StoreListener listener) {
+        changes.removeListener(listener);
     }
 }
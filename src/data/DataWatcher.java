@@ -0,0 +1,93 @@
+package data;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Watches the data directory for files written by other processes, e.g. a second
+ * kiosk or an import script, and reports which files changed.
+ * Runs on its own daemon thread. Events that arrive close together are coalesced,
+ * so a file written in several steps is reported once.
+ */
+public class DataWatcher implements AutoCloseable {
+    // How long to wait for more events before reporting a batch
+    private static final long SETTLE_MS = 50;
+
+    private final Path dir;
+    private final Set<String> fileNames;
+    private final Consumer<Set<String>> onChange;
+    private final WatchService watchService;
+    private Thread thread;
+
+    /**
+     * @param dir       directory to watch
+     * @param fileNames names of the files of interest; everything else is ignored
+     * @param onChange  called on the watcher thread with the names of the changed files
+     */
+    public DataWatcher(Path dir, Set<String> fileNames, Consumer<Set<String>> onChange) throws IOException {
+        this.dir = dir;
+        this.fileNames = fileNames;
+        this.onChange = onChange;
+        this.watchService = dir.getFileSystem().newWatchService();
+        dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+    }
+
+    public void start() {
+        thread = new Thread(this::watchLoop, "data-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void close() {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            System.err.println("Error closing data watcher: " + e.getMessage());
+        }
+    }
+
+    private void watchLoop() {
+        try {
+            while (true) {
+                Set<String> changed = new LinkedHashSet<>();
+                WatchKey key = watchService.take();
+                while (key != null) {
+                    collect(key, changed);
+                    key = watchService.poll(SETTLE_MS, TimeUnit.MILLISECONDS);
+                }
+                if (!changed.isEmpty()) {
+                    try {
+                        onChange.accept(changed);
+                    } catch (RuntimeException e) {
+                        System.err.println("Error applying changes to " + changed + ": " + e.getMessage());
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed
+        }
+    }
+
+    private void collect(WatchKey key, Set<String> changed) {
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // Events were lost; check everything
+                changed.addAll(fileNames);
+            } else {
+                String name = event.context().toString();
+                if (fileNames.contains(name)) {
+                    changed.add(name);
+                }
+            }
+        }
+        if (!key.reset()) {
+            System.err.println("Stopped watching " + dir + ": directory is gone");
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+
+/**
+ * Crash-safe file writes.
+ * A file is either fully replaced or left untouched: the new content goes to a
+ * temp file, is forced to disk, and is then renamed over the target.
+ */
+public class DurableFile {
+
+    private DurableFile() {
+    }
+
+    /**
+     * Atomically replaces the target file with the given bytes.
+     */
+    public static void writeAtomically(Path target, byte[] bytes) throws IOException {
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, ByteBuffer.wrap(bytes));
+            channel.force(true);
+        }
+        try {
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        syncDirectory(target.toAbsolutePath().getParent());
+    }
+
+    /**
+     * Opens a file for durable appends, creating it if needed.
+     */
+    public static FileChannel openForAppend(Path path) throws IOException {
+        boolean created = !Files.exists(path);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        if (created) {
+            syncDirectory(path.toAbsolutePath().getParent());
+        }
+        return channel;
+    }
+
+    /**
+     * Appends the bytes and forces them to disk before returning.
+     */
+    public static void append(FileChannel channel, byte[] bytes) throws IOException {
+        writeFully(channel, ByteBuffer.wrap(bytes));
+        channel.force(false);
+    }
+
+    /**
+     * Makes a rename or file creation in the directory durable.
+     * Not supported on every platform (e.g. Windows), where it is skipped.
+     */
+    public static void syncDirectory(Path dir) {
+        if (dir == null) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Directories cannot be opened as channels on this platform
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
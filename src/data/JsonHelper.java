@@ -2,6 +2,7 @@ package data;
 
 import model.*;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.*;
 
@@ -12,8 +13,17 @@ import java.util.*;
 public class JsonHelper {
 
     // ==================== WRITE METHODS ====================
+    // Each writer returns the number of bytes written to disk.
 
-    public static void writeUsers(List<User> users, String filePath) throws IOException {
+    public static long writeUsers(List<User> users, String filePath) throws IOException {
+        return writeFile(filePath, usersJson(users));
+    }
+
+    public static long writeProducts(List<Product> products, String filePath) throws IOException {
+        return writeFile(filePath, productsJson(products));
+    }
+
+    static StringBuilder usersJson(List<User> users) {
         StringBuilder json = new StringBuilder();
         json.append("[\n");
         for (int i = 0; i < users.size(); i++) {
@@ -28,10 +38,10 @@ public class JsonHelper {
             json.append("\n");
         }
         json.append("]");
-        Files.writeString(Path.of(filePath), json.toString());
+        return json;
     }
 
-    public static void writeProducts(List<Product> products, String filePath) throws IOException {
+    static StringBuilder productsJson(List<Product> products) {
         StringBuilder json = new StringBuilder();
         json.append("[\n");
         for (int i = 0; i < products.size(); i++) {
@@ -49,10 +59,10 @@ public class JsonHelper {
             json.append("\n");
         }
         json.append("]");
-        Files.writeString(Path.of(filePath), json.toString());
+        return json;
     }
 
-    public static void writeOrders(List<Order> orders, String filePath) throws IOException {
+    public static long writeOrders(List<Order> orders, String filePath) throws IOException {
         StringBuilder json = new StringBuilder();
         json.append("[\n");
         for (int i = 0; i < orders.size(); i++) {
@@ -72,7 +82,7 @@ public class JsonHelper {
                 json.append("        \"productId\": \"").append(escapeJson(item.getProduct().getId())).append("\",\n");
                 json.append("        \"productName\": \"").append(escapeJson(item.getProduct().getName()))
                         .append("\",\n");
-                json.append("        \"productPrice\": ").append(item.getProduct().getPrice()).append(",\n");
+                json.append("        \"productPrice\": ").append(item.getUnitPrice()).append(",\n");
                 json.append("        \"quantity\": ").append(item.getQuantity()).append("\n");
                 json.append("      }");
                 if (j < items.size() - 1)
@@ -86,212 +96,287 @@ public class JsonHelper {
             json.append("\n");
         }
         json.append("]");
-        Files.writeString(Path.of(filePath), json.toString());
+        return writeFile(filePath, json);
+    }
+
+    /**
+     * Serializes a single order as one line of compact JSON, as used by the order journal.
+     */
+    static void appendOrderJson(StringBuilder json, Order o) {
+        json.append("{\"orderId\":\"").append(escapeJson(o.getOrderId()))
+                .append("\",\"buyerUsername\":\"").append(escapeJson(o.getBuyerUsername()))
+                .append("\",\"roomName\":\"").append(escapeJson(o.getRoomName()))
+                .append("\",\"totalAmount\":").append(o.getTotalAmount())
+                .append(",\"status\":\"").append(o.getStatus().name())
+                .append("\",\"createdTime\":").append(o.getCreatedTime())
+                .append(",\"items\":[");
+        List<CartItem> items = o.getItems();
+        for (int j = 0; j < items.size(); j++) {
+            CartItem item = items.get(j);
+            if (j > 0)
+                json.append(",");
+            json.append("{\"productId\":\"").append(escapeJson(item.getProduct().getId()))
+                    .append("\",\"productName\":\"").append(escapeJson(item.getProduct().getName()))
+                    .append("\",\"category\":\"").append(item.getCategory().name())
+                    .append("\",\"productPrice\":").append(item.getUnitPrice())
+                    .append(",\"quantity\":").append(item.getQuantity())
+                    .append("}");
+        }
+        json.append("]}");
+    }
+
+    /**
+     * Serializes a product as one line of compact JSON, as used by the order server.
+     * Includes the reserved quantity so a remote copy shows the same available stock.
+     */
+    static void appendProductJson(StringBuilder json, Product p) {
+        json.append("{\"id\":\"").append(escapeJson(p.getId()))
+                .append("\",\"name\":\"").append(escapeJson(p.getName()))
+                .append("\",\"price\":").append(p.getPrice())
+                .append(",\"description\":\"").append(escapeJson(p.getDescription()))
+                .append("\",\"stock\":").append(p.getStock())
+                .append(",\"reserved\":").append(p.getStockCounter().getReserved())
+                .append(",\"category\":\"").append(p.getCategory().name())
+                .append("\"}");
+    }
+
+    /**
+     * Serializes a user as one line of compact JSON.
+     * @param withPassword false to leave the password out, e.g. for users sent to clients
+     */
+    static void appendUserJson(StringBuilder json, User u, boolean withPassword) {
+        json.append("{\"username\":\"").append(escapeJson(u.getUsername()));
+        if (withPassword && u.getPassword() != null) {
+            json.append("\",\"password\":\"").append(escapeJson(u.getPassword()));
+        }
+        json.append("\",\"role\":\"").append(escapeJson(u.getRole()))
+                .append("\"}");
     }
 
     // ==================== READ METHODS ====================
 
     public static List<User> readUsers(String filePath) throws IOException {
         List<User> users = new ArrayList<>();
-        String content = Files.readString(Path.of(filePath));
-        List<Map<String, String>> items = parseJsonArray(content);
-        for (Map<String, String> item : items) {
-            users.add(new User(
-                    item.get("username"),
-                    item.get("password"),
-                    item.get("role")));
+        try (JsonReader reader = openReader(filePath)) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                users.add(readUser(reader));
+            }
+            reader.endArray();
         }
         return users;
     }
 
     public static List<Product> readProducts(String filePath) throws IOException {
         List<Product> products = new ArrayList<>();
-        String content = Files.readString(Path.of(filePath));
-        List<Map<String, String>> items = parseJsonArray(content);
-        for (Map<String, String> item : items) {
-            products.add(new Product(
-                    item.get("id"),
-                    item.get("name"),
-                    Double.parseDouble(item.get("price")),
-                    item.get("description"),
-                    Integer.parseInt(item.get("stock")),
-                    Category.valueOf(item.get("category"))));
+        try (JsonReader reader = openReader(filePath)) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                products.add(readProduct(reader));
+            }
+            reader.endArray();
         }
         return products;
     }
 
-    public static List<Order> readOrders(String filePath, List<Product> products) throws IOException {
+    /**
+     * Reads orders, resolving their items against the products indexed by id.
+     */
+    public static List<Order> readOrders(String filePath, Map<String, Product> productsById) throws IOException {
         List<Order> orders = new ArrayList<>();
-        String content = Files.readString(Path.of(filePath));
-
-        // Simple parsing for orders with nested items
-        List<String> orderBlocks = splitOrderBlocks(content);
-        for (String block : orderBlocks) {
-            Map<String, String> orderData = parseJsonObject(block);
-
-            // Parse items
-            List<CartItem> cartItems = new ArrayList<>();
-            String itemsSection = extractItemsArray(block);
-            if (itemsSection != null && !itemsSection.isEmpty()) {
-                List<Map<String, String>> itemsList = parseJsonArray("[" + itemsSection + "]");
-                for (Map<String, String> itemData : itemsList) {
-                    // Find or create product
-                    Product product = findProductById(products, itemData.get("productId"));
-                    if (product == null) {
-                        // Create a placeholder product if not found
-                        product = new Product(
-                                itemData.get("productId"),
-                                itemData.get("productName"),
-                                Double.parseDouble(itemData.getOrDefault("productPrice", "0")),
-                                "",
-                                0,
-                                Category.MAKANAN);
-                    }
-                    int quantity = Integer.parseInt(itemData.get("quantity"));
-                    cartItems.add(new CartItem(product, quantity));
-                }
+        try (JsonReader reader = openReader(filePath)) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                orders.add(readOrder(reader, productsById));
             }
-
-            Order order = new Order(
-                    orderData.get("buyerUsername"),
-                    orderData.get("roomName"),
-                    cartItems);
-            // Set saved values
-            order.setStatus(OrderStatus.valueOf(orderData.get("status")));
-            orders.add(order);
+            reader.endArray();
         }
         return orders;
     }
 
-    // ==================== HELPER METHODS ====================
+    // ==================== OBJECT READERS ====================
 
-    private static String escapeJson(String s) {
-        if (s == null)
-            return "";
-        return s.replace("\\", "\\\\")
-                .replace("\"", "\\\"")
-                .replace("\n", "\\n")
-                .replace("\r", "\\r")
-                .replace("\t", "\\t");
+    static User readUser(JsonReader reader) throws IOException {
+        String username = null;
+        String password = null;
+        String role = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "username":
+                    username = reader.nextString();
+                    break;
+                case "password":
+                    password = reader.nextString();
+                    break;
+                case "role":
+                    role = reader.nextString();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new User(username, password, role);
     }
 
-    private static List<Map<String, String>> parseJsonArray(String json) {
-        List<Map<String, String>> result = new ArrayList<>();
-        json = json.trim();
-        if (!json.startsWith("["))
-            return result;
-
-        int depth = 0;
-        int start = -1;
-        for (int i = 0; i < json.length(); i++) {
-            char c = json.charAt(i);
-            if (c == '{') {
-                if (depth == 1)
-                    start = i;
-                depth++;
-            } else if (c == '}') {
-                depth--;
-                if (depth == 1 && start >= 0) {
-                    String obj = json.substring(start, i + 1);
-                    result.add(parseJsonObject(obj));
-                    start = -1;
-                }
-            } else if (c == '[') {
-                depth++;
-            } else if (c == ']') {
-                depth--;
+    static Product readProduct(JsonReader reader) throws IOException {
+        String id = null;
+        String name = null;
+        double price = 0;
+        String description = null;
+        int stock = 0;
+        int reserved = 0;
+        Category category = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "id":
+                    id = reader.nextString();
+                    break;
+                case "name":
+                    name = reader.nextString();
+                    break;
+                case "price":
+                    price = reader.nextDouble();
+                    break;
+                case "description":
+                    description = reader.nextString();
+                    break;
+                case "stock":
+                    stock = reader.nextInt();
+                    break;
+                case "reserved":
+                    reserved = reader.nextInt();
+                    break;
+                case "category":
+                    category = Category.valueOf(reader.nextString());
+                    break;
+                default:
+                    reader.skipValue();
             }
         }
-        return result;
+        reader.endObject();
+        Product product = new Product(id, name, price, description, stock, category);
+        product.getStockCounter().tryReserve(reserved);
+        return product;
     }
 
-    private static Map<String, String> parseJsonObject(String json) {
-        Map<String, String> map = new HashMap<>();
-        json = json.trim();
-        if (!json.startsWith("{"))
-            return map;
-
-        // Remove outer braces
-        json = json.substring(1, json.lastIndexOf('}'));
-
-        // Simple key-value parsing (doesn't handle nested objects well)
-        String[] lines = json.split(",\n");
-        for (String line : lines) {
-            line = line.trim();
-            if (line.isEmpty() || line.startsWith("\"items\""))
-                continue;
+    static Order readOrder(JsonReader reader, Map<String, Product> productsById) throws IOException {
+        String orderId = null;
+        long createdTime = 0;
+        String buyerUsername = null;
+        String roomName = null;
+        OrderStatus status = OrderStatus.PENDING;
+        List<CartItem> cartItems = new ArrayList<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "orderId":
+                    orderId = reader.nextString();
+                    break;
+                case "createdTime":
+                    createdTime = reader.nextLong();
+                    break;
+                case "buyerUsername":
+                    buyerUsername = reader.nextString();
+                    break;
+                case "roomName":
+                    roomName = reader.nextString();
+                    break;
+                case "status":
+                    status = OrderStatus.valueOf(reader.nextString());
+                    break;
+                case "items":
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        cartItems.add(readCartItem(reader, productsById));
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
 
-            int colonPos = line.indexOf(':');
-            if (colonPos > 0) {
-                String key = line.substring(0, colonPos).trim().replace("\"", "");
-                String value = line.substring(colonPos + 1).trim();
-                // Remove trailing comma
-                if (value.endsWith(","))
-                    value = value.substring(0, value.length() - 1);
-                // Remove quotes
-                if (value.startsWith("\"") && value.endsWith("\"")) {
-                    value = value.substring(1, value.length() - 1);
-                }
-                map.put(key, value);
+        if (orderId == null) {
+            // Older files without ids get a fresh one, but keep their time if they have it
+            Order order = new Order(buyerUsername, roomName, cartItems);
+            if (createdTime == 0) {
+                order.setStatus(status);
+                return order;
             }
+            orderId = order.getOrderId();
         }
-        return map;
+        return new Order(orderId, buyerUsername, roomName, cartItems, status, createdTime);
     }
 
-    private static List<String> splitOrderBlocks(String content) {
-        List<String> blocks = new ArrayList<>();
-        int depth = 0;
-        int start = -1;
-        for (int i = 0; i < content.length(); i++) {
-            char c = content.charAt(i);
-            if (c == '{') {
-                if (depth == 1)
-                    start = i;
-                depth++;
-            } else if (c == '}') {
-                depth--;
-                if (depth == 1 && start >= 0) {
-                    blocks.add(content.substring(start, i + 1));
-                    start = -1;
-                }
-            } else if (c == '[') {
-                depth++;
-            } else if (c == ']') {
-                depth--;
+    private static CartItem readCartItem(JsonReader reader, Map<String, Product> productsById)
+            throws IOException {
+        String productId = null;
+        String productName = null;
+        double productPrice = Double.NaN;
+        Category category = Category.MAKANAN;
+        int quantity = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "productId":
+                    productId = reader.nextString();
+                    break;
+                case "productName":
+                    productName = reader.nextString();
+                    break;
+                case "productPrice":
+                    productPrice = reader.nextDouble();
+                    break;
+                case "category":
+                    category = Category.valueOf(reader.nextString());
+                    break;
+                case "quantity":
+                    quantity = reader.nextInt();
+                    break;
+                default:
+                    reader.skipValue();
             }
         }
-        return blocks;
+        reader.endObject();
+
+        // Find or create product
+        Product product = productsById.get(productId);
+        if (product == null) {
+            // Create a placeholder product if not found, in the category the line recorded
+            product = new Product(productId, productName, Double.isNaN(productPrice) ? 0 : productPrice, "", 0,
+                    category);
+        }
+        // Keep the price the line was sold at; lines saved without one use the current price
+        return new CartItem(product, quantity, Double.isNaN(productPrice) ? product.getPrice() : productPrice);
     }
 
-    private static String extractItemsArray(String orderBlock) {
-        int itemsStart = orderBlock.indexOf("\"items\"");
-        if (itemsStart < 0)
-            return null;
+    // ==================== HELPER METHODS ====================
 
-        int bracketStart = orderBlock.indexOf('[', itemsStart);
-        if (bracketStart < 0)
-            return null;
+    /**
+     * Atomically replaces the file with the JSON text and returns the number of bytes written.
+     * A crash mid-write leaves the previous version of the file intact.
+     */
+    static long writeFile(String filePath, StringBuilder json) throws IOException {
+        byte[] bytes = json.toString().getBytes(StandardCharsets.UTF_8);
+        DurableFile.writeAtomically(Path.of(filePath), bytes);
+        return bytes.length;
+    }
 
-        int depth = 0;
-        for (int i = bracketStart; i < orderBlock.length(); i++) {
-            char c = orderBlock.charAt(i);
-            if (c == '[')
-                depth++;
-            else if (c == ']') {
-                depth--;
-                if (depth == 0) {
-                    return orderBlock.substring(bracketStart + 1, i);
-                }
-            }
-        }
-        return null;
+    static JsonReader openReader(String filePath) throws IOException {
+        return new JsonReader(new InputStreamReader(Files.newInputStream(Path.of(filePath)), StandardCharsets.UTF_8));
     }
 
-    private static Product findProductById(List<Product> products, String id) {
-        for (Product p : products) {
-            if (p.getId().equals(id))
-                return p;
-        }
-        return null;
+    static String escapeJson(String s) {
+        if (s == null)
+            return "";
+        return s.replace("\\", "\\\\")
+                .replace("\"", "\\\"")
+                .replace("\n", "\\n")
+                .replace("\r", "\\r")
+                .replace("\t", "\\t");
     }
 }
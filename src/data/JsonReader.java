@@ -0,0 +1,262 @@
+package data;
+
+import java.io.*;
+
+/**
+ * Minimal pull-style JSON tokenizer.
+ * Reads characters straight from a Reader through a fixed buffer, so callers can
+ * build model objects field by field without loading the whole file into memory.
+ */
+public class JsonReader implements Closeable {
+    private final Reader in;
+    private final char[] buffer = new char[8192];
+    private final StringBuilder token = new StringBuilder();
+    private int pos = 0;
+    private int limit = 0;
+    private long consumed = 0;
+
+    public JsonReader(Reader in) {
+        this.in = in;
+    }
+
+    // ==================== STRUCTURE ====================
+
+    public void beginArray() throws IOException {
+        expect('[');
+    }
+
+    public void endArray() throws IOException {
+        expect(']');
+    }
+
+    public void beginObject() throws IOException {
+        expect('{');
+    }
+
+    public void endObject() throws IOException {
+        expect('}');
+    }
+
+    /**
+     * Returns true if the current array or object has another element.
+     * Consumes the separating comma, if any.
+     */
+    public boolean hasNext() throws IOException {
+        int c = peekToken();
+        if (c == ',') {
+            pos++;
+            c = peekToken();
+        }
+        return c != ']' && c != '}' && c != -1;
+    }
+
+    /**
+     * Returns true if there is another top-level value in the stream.
+     */
+    public boolean hasMoreValues() throws IOException {
+        return peekToken() != -1;
+    }
+
+    // ==================== VALUES ====================
+
+    public String nextName() throws IOException {
+        String name = nextString();
+        expect(':');
+        return name;
+    }
+
+    public String nextString() throws IOException {
+        expect('"');
+        token.setLength(0);
+        while (true) {
+            if (pos == limit && !fill()) {
+                throw error("Unterminated string");
+            }
+            char c = buffer[pos++];
+            if (c == '"') {
+                return token.toString();
+            }
+            if (c == '\\') {
+                token.append(readEscape());
+            } else {
+                token.append(c);
+            }
+        }
+    }
+
+    public double nextDouble() throws IOException {
+        String number = readLiteral();
+        try {
+            return Double.parseDouble(number);
+        } catch (NumberFormatException e) {
+            throw error("Expected a number but was '" + number + "'");
+        }
+    }
+
+    public long nextLong() throws IOException {
+        String number = readLiteral();
+        try {
+            return Long.parseLong(number);
+        } catch (NumberFormatException e) {
+            // Tolerate values written as doubles, e.g. 3.0
+            try {
+                return (long) Double.parseDouble(number);
+            } catch (NumberFormatException e2) {
+                throw error("Expected a number but was '" + number + "'");
+            }
+        }
+    }
+
+    public int nextInt() throws IOException {
+        return (int) nextLong();
+    }
+
+    public boolean nextBoolean() throws IOException {
+        String literal = readLiteral();
+        if (!literal.equals("true") && !literal.equals("false")) {
+            throw error("Expected a boolean but was '" + literal + "'");
+        }
+        return literal.equals("true");
+    }
+
+    /**
+     * Consumes the next value if it is null.
+     *
+     * @return true if a null was consumed
+     */
+    public boolean nextNull() throws IOException {
+        if (peekToken() != 'n') {
+            return false;
+        }
+        String literal = readLiteral();
+        if (!literal.equals("null")) {
+            throw error("Expected null but was '" + literal + "'");
+        }
+        return true;
+    }
+
+    /**
+     * Skips the next value, including any nested objects or arrays.
+     */
+    public void skipValue() throws IOException {
+        int c = peekToken();
+        if (c == '"') {
+            nextString();
+        } else if (c == '{') {
+            beginObject();
+            while (hasNext()) {
+                nextName();
+                skipValue();
+            }
+            endObject();
+        } else if (c == '[') {
+            beginArray();
+            while (hasNext()) {
+                skipValue();
+            }
+            endArray();
+        } else {
+            readLiteral();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    // ==================== HELPER METHODS ====================
+
+    private char readEscape() throws IOException {
+        if (pos == limit && !fill()) {
+            throw error("Unterminated escape sequence");
+        }
+        char c = buffer[pos++];
+        switch (c) {
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'u':
+                int code = 0;
+                for (int i = 0; i < 4; i++) {
+                    if (pos == limit && !fill()) {
+                        throw error("Unterminated unicode escape");
+                    }
+                    int digit = Character.digit(buffer[pos++], 16);
+                    if (digit < 0) {
+                        throw error("Invalid unicode escape");
+                    }
+                    code = (code << 4) | digit;
+                }
+                return (char) code;
+            default:
+                // \" \\ \/ and anything else map to themselves
+                return c;
+        }
+    }
+
+    /** Reads a bare literal such as a number, true, false or null. */
+    private String readLiteral() throws IOException {
+        peekToken();
+        token.setLength(0);
+        while (pos < limit || fill()) {
+            char c = buffer[pos];
+            if (c == ',' || c == '}' || c == ']' || c == ':' || Character.isWhitespace(c)) {
+                break;
+            }
+            token.append(c);
+            pos++;
+        }
+        if (token.length() == 0) {
+            throw error("Expected a value");
+        }
+        return token.toString();
+    }
+
+    private void expect(char expected) throws IOException {
+        int c = peekToken();
+        if (c != expected) {
+            throw error("Expected '" + expected + "' but was " + describe(c));
+        }
+        pos++;
+    }
+
+    /** Skips whitespace and returns the next character without consuming it, or -1 at end of input. */
+    private int peekToken() throws IOException {
+        while (pos < limit || fill()) {
+            char c = buffer[pos];
+            if (!Character.isWhitespace(c)) {
+                return c;
+            }
+            pos++;
+        }
+        return -1;
+    }
+
+    private boolean fill() throws IOException {
+        consumed += limit;
+        pos = 0;
+        limit = 0;
+        int n = in.read(buffer, 0, buffer.length);
+        if (n <= 0) {
+            return false;
+        }
+        limit = n;
+        return true;
+    }
+
+    private String describe(int c) {
+        return c == -1 ? "end of input" : "'" + (char) c + "'";
+    }
+
+    private IOException error(String message) {
+        return new IOException(message + " at offset " + (consumed + pos));
+    }
+}
@@ -0,0 +1,234 @@
+package data;
+
+import model.CartItem;
+import model.Category;
+import model.Order;
+import model.OrderStatus;
+import model.Product;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Plans the kitchen's work across orders.
+ * Open orders are queued by due time: when they were placed plus the SLA of the slowest
+ * category they contain. {@link #nextTicket()} takes the next dish of the most urgent
+ * order and puts the same product from other waiting orders on the same ticket, most
+ * urgent first, up to {@code maxBatch} units, so it is cooked once for all of them.
+ * Starting a ticket moves its orders to PREPARING; finishing it delivers the orders that
+ * have nothing left to cook.
+ * <p>
+ * Not thread-safe: the kitchen screen uses it on the FX thread.
+ */
+public class KitchenQueue {
+    public static final Map<Category, Long> DEFAULT_SLA_MS = Collections.unmodifiableMap(new EnumMap<>(Map.of(
+            Category.MINUMAN, 5 * 60_000L,
+            Category.SNACK, 10 * 60_000L,
+            Category.MAKANAN, 15 * 60_000L)));
+    public static final int DEFAULT_MAX_BATCH = 8;
+
+    private static final Comparator<Entry> URGENCY = Comparator.<Entry>comparingLong(e -> e.deadline)
+            .thenComparingLong(e -> e.order.getCreatedTime())
+            .thenComparing(e -> e.order.getOrderId());
+
+    private final Map<Category, Long> slaMs;
+    private final long defaultSlaMs;
+    private final int maxBatch;
+    private final BiConsumer<Order, OrderStatus> onAdvance;
+
+    // Orders with dishes not on a ticket yet, most urgent first; entries with nothing
+    // left to ticket are dropped when they reach the head
+    private final PriorityQueue<Entry> waiting = new PriorityQueue<>(URGENCY);
+    private final Map<String, Entry> byId = new HashMap<>();
+    // Orders still waiting for each product, by product id
+    private final Map<String, List<Entry>> byProduct = new HashMap<>();
+
+    /**
+     * @param onAdvance moves an order to a new status, e.g. {@code store::updateOrderStatus}
+     */
+    public KitchenQueue(BiConsumer<Order, OrderStatus> onAdvance) {
+        this(DEFAULT_SLA_MS, DEFAULT_MAX_BATCH, onAdvance);
+    }
+
+    /**
+     * @param slaMs    target time from order to delivery, per category
+     * @param maxBatch most units of one product on a ticket; an order's whole
+     *                 quantity always goes on one ticket, so 1 turns batching off
+     */
+    public KitchenQueue(Map<Category, Long> slaMs, int maxBatch, BiConsumer<Order, OrderStatus> onAdvance) {
+        this.slaMs = slaMs;
+        this.defaultSlaMs = slaMs.values().stream().mapToLong(Long::longValue).max().orElse(0);
+        this.maxBatch = maxBatch;
+        this.onAdvance = onAdvance;
+    }
+
+    /**
+     * Queues an open order. Delivered or cancelled orders are ignored; for one already
+     * queued, only a move to PREPARING made elsewhere (e.g. by hand) is picked up.
+     */
+    public void add(Order order) {
+        Entry queued = byId.get(order.getOrderId());
+        if (queued != null) {
+            queued.started |= order.getStatus() == OrderStatus.PREPARING;
+            return;
+        }
+        if (order.getStatus() == OrderStatus.DELIVERED || order.getStatus() == OrderStatus.CANCELLED) {
+            return;
+        }
+        Entry e = new Entry(order, deadlineOf(order));
+        for (CartItem item : order.getItems()) {
+            String productId = item.getProduct().getId();
+            if (!e.todo.containsKey(productId)) {
+                e.dishes.put(productId, item.getProduct());
+                byProduct.computeIfAbsent(productId, id -> new ArrayList<>()).add(e);
+            }
+            e.todo.merge(productId, item.getQuantity(), Integer::sum);
+        }
+        e.started = order.getStatus() == OrderStatus.PREPARING;
+        byId.put(order.getOrderId(), e);
+        if (!e.todo.isEmpty()) {
+            waiting.add(e);
+        }
+    }
+
+    /** Drops an order, e.g. after it was cancelled. Tickets already out skip it. */
+    public void remove(String orderId) {
+        Entry e = byId.remove(orderId);
+        if (e != null) {
+            for (String productId : e.todo.keySet()) {
+                unlist(productId, e);
+            }
+            e.todo.clear();
+        }
+    }
+
+    /** Brings the queue in line with the store's open (pending and preparing) orders. */
+    public void sync(List<Order> open) {
+        Set<String> ids = new HashSet<>();
+        for (Order o : open) {
+            ids.add(o.getOrderId());
+            add(o);
+        }
+        for (String id : new ArrayList<>(byId.keySet())) {
+            if (!ids.contains(id)) {
+                remove(id);
+            }
+        }
+    }
+
+    /** Number of orders in the kitchen, on a ticket or not. */
+    public int size() {
+        return byId.size();
+    }
+
+    /**
+     * Plans the next ticket: the most urgent order's next dish, together with the same
+     * product from other waiting orders. Returns null when there is nothing left to cook.
+     */
+    public PrepTicket nextTicket() {
+        Entry seed = waiting.peek();
+        while (seed != null && seed.todo.isEmpty()) {
+            waiting.poll();
+            seed = waiting.peek();
+        }
+        if (seed == null) {
+            return null;
+        }
+        String productId = seed.todo.keySet().iterator().next();
+        Product product = seed.dishes.get(productId);
+
+        List<Entry> candidates = byProduct.remove(productId);
+        candidates.sort(URGENCY);
+        List<Entry> rest = new ArrayList<>();
+        List<Order> orders = new ArrayList<>();
+        int quantity = 0;
+        for (Entry e : candidates) {
+            int q = e.todo.get(productId);
+            // The seed is most urgent, so it always goes on; others only if they fit whole
+            if (e != seed && quantity + q > maxBatch) {
+                rest.add(e);
+                continue;
+            }
+            quantity += q;
+            e.todo.remove(productId);
+            e.openTickets++;
+            orders.add(e.order);
+        }
+        if (!rest.isEmpty()) {
+            byProduct.put(productId, rest);
+        }
+        return new PrepTicket(product, quantity, orders, seed.deadline);
+    }
+
+    /** Starts cooking a ticket; its orders that were still pending move to PREPARING. */
+    public void start(PrepTicket ticket) {
+        if (ticket.isStarted()) {
+            return;
+        }
+        ticket.markStarted();
+        for (Order o : ticket.getOrders()) {
+            Entry e = byId.get(o.getOrderId());
+            if (e != null && !e.started) {
+                e.started = true;
+                // Moved by hand since it was queued; advancing again would journal a no-op
+                if (e.order.getStatus() != OrderStatus.PREPARING) {
+                    onAdvance.accept(e.order, OrderStatus.PREPARING);
+                }
+            }
+        }
+    }
+
+    /** Finishes a ticket; orders with nothing else left to cook are delivered. */
+    public void finish(PrepTicket ticket) {
+        start(ticket);
+        for (Order o : ticket.getOrders()) {
+            Entry e = byId.get(o.getOrderId());
+            if (e != null && --e.openTickets == 0 && e.todo.isEmpty()) {
+                byId.remove(o.getOrderId());
+                onAdvance.accept(e.order, OrderStatus.DELIVERED);
+            }
+        }
+    }
+
+    // ==================== HELPER METHODS ====================
+
+    private long deadlineOf(Order order) {
+        long sla = 0;
+        for (CartItem item : order.getItems()) {
+            sla = Math.max(sla, slaMs.getOrDefault(item.getProduct().getCategory(), defaultSlaMs));
+        }
+        return order.getCreatedTime() + sla;
+    }
+
+    private void unlist(String productId, Entry e) {
+        List<Entry> list = byProduct.get(productId);
+        if (list != null && list.remove(e) && list.isEmpty()) {
+            byProduct.remove(productId);
+        }
+    }
+
+    private static class Entry {
+        final Order order;
+        final long deadline;
+        // Dishes not on a ticket yet, in the order they were ordered
+        final Map<String, Integer> todo = new LinkedHashMap<>();
+        final Map<String, Product> dishes = new HashMap<>();
+        int openTickets;
+        boolean started;
+
+        Entry(Order order, long deadline) {
+            this.order = order;
+            this.deadline = deadline;
+        }
+    }
+}
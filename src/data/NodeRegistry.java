@@ -0,0 +1,75 @@
+package data;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Hands out order-id node ids to the processes sharing one data directory.
+ * Each id is a lock file (data/nodes/node-N.lock); a process owns the id whose file it
+ * holds a lock on, for as long as it runs. The operating system drops the lock when the
+ * process exits, even after a crash, so ids are reused but never held twice at once.
+ */
+class NodeRegistry {
+    // Held for the life of the process; never released, so the id stays ours
+    private static FileChannel channel;
+    private static FileLock lock;
+
+    private NodeRegistry() {
+    }
+
+    /**
+     * Claims a node id under the directory.
+     *
+     * @param preferred the id to claim, or -1 for the lowest free one
+     * @throws IllegalStateException if the preferred id is in use, none is free, or
+     *                               the lock files cannot be opened
+     */
+    static synchronized int claim(String directory, int preferred, int maxNode) {
+        if (lock != null) {
+            throw new IllegalStateException("A node id was already claimed by this process");
+        }
+        try {
+            Files.createDirectories(Path.of(directory));
+            int first = preferred < 0 ? 0 : preferred;
+            int last = preferred < 0 ? maxNode : preferred;
+            for (int node = first; node <= last; node++) {
+                if (tryLock(Path.of(directory, "node-" + node + ".lock"))) {
+                    return node;
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not claim an order id node under " + directory + ": "
+                    + e.getMessage(), e);
+        }
+        if (preferred >= 0) {
+            throw new IllegalStateException("Order id node " + preferred
+                    + " is in use by another process on this data; give each one its own -Dcafe.nodeId");
+        }
+        throw new IllegalStateException("All " + (maxNode + 1) + " order id nodes under " + directory + " are in use");
+    }
+
+    private static boolean tryLock(Path file) throws IOException {
+        FileChannel candidate = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock acquired;
+        try {
+            acquired = candidate.tryLock();
+        } catch (OverlappingFileLockException e) {
+            acquired = null;
+        } catch (IOException e) {
+            candidate.close();
+            throw e;
+        }
+        if (acquired == null) {
+            candidate.close();
+            return false;
+        }
+        channel = candidate;
+        lock = acquired;
+        return true;
+    }
+}
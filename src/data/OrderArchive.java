@@ -0,0 +1,287 @@
+package data;
+
+import model.*;
+import java.io.*;
+import java.lang.ref.SoftReference;
+import java.nio.file.*;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * On-disk archive of completed orders, split into one JSON segment per month
+ * (data/archive/orders-YYYY-MM.json).
+ * Segments are only read when a report or history view asks for them, and are
+ * cached through soft references so the heap does not grow with history.
+ * <p>
+ * Per-month totals are kept in data/archive/summary.json, so statistics over the
+ * whole history do not need to read the segments. Each entry records the size of
+ * the segment it was computed from; a month whose segment no longer matches is
+ * recomputed from the segment.
+ */
+public class OrderArchive {
+    private static final String PREFIX = "orders-";
+    private static final String SUFFIX = ".json";
+    private static final String SUMMARY_FILE = "summary.json";
+
+    private final Path directory;
+    private final TreeSet<YearMonth> months = new TreeSet<>();
+    private final Map<YearMonth, SoftReference<List<Order>>> cache = new HashMap<>();
+
+    // Totals per month, with the segment size they were computed from
+    private final Map<YearMonth, SalesStats> summaries = new HashMap<>();
+    private final Map<YearMonth, Long> summarizedBytes = new HashMap<>();
+
+    public OrderArchive(String directory) {
+        this.directory = Path.of(directory);
+        scan();
+        readSummary();
+    }
+
+    private void scan() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(p -> p.getFileName().toString())
+                    .filter(name -> name.startsWith(PREFIX) && name.endsWith(SUFFIX))
+                    .forEach(name -> {
+                        try {
+                            months.add(YearMonth.parse(
+                                    name.substring(PREFIX.length(), name.length() - SUFFIX.length())));
+                        } catch (RuntimeException e) {
+                            System.err.println("Ignoring unexpected archive file " + name);
+                        }
+                    });
+        } catch (IOException e) {
+            System.err.println("Could not list order archive: " + e.getMessage());
+        }
+    }
+
+    /** Archived months, newest first. */
+    public synchronized List<YearMonth> getMonths() {
+        return new ArrayList<>(months.descendingSet());
+    }
+
+    /**
+     * Returns the archived orders of one month, oldest first, loading the segment if needed.
+     */
+    public synchronized List<Order> load(YearMonth month, Map<String, Product> productsById) throws IOException {
+        SoftReference<List<Order>> ref = cache.get(month);
+        List<Order> cached = ref != null ? ref.get() : null;
+        if (cached != null) {
+            return cached;
+        }
+        if (!months.contains(month)) {
+            return Collections.emptyList();
+        }
+        List<Order> loaded = Collections.unmodifiableList(
+                JsonHelper.readOrders(segmentPath(month).toString(), productsById));
+        cache.put(month, new SoftReference<>(loaded));
+        return loaded;
+    }
+
+    /**
+     * Moves the given orders into their month segments, merging with what is already
+     * there. Orders already archived (same id) are not duplicated.
+     *
+     * @return the number of bytes written
+     */
+    public synchronized long archive(List<Order> orders, Map<String, Product> productsById) throws IOException {
+        Map<YearMonth, List<Order>> byMonth = new TreeMap<>();
+        for (Order o : orders) {
+            byMonth.computeIfAbsent(monthOf(o), m -> new ArrayList<>()).add(o);
+        }
+
+        Files.createDirectories(directory);
+        long bytes = 0;
+        for (Map.Entry<YearMonth, List<Order>> entry : byMonth.entrySet()) {
+            YearMonth month = entry.getKey();
+            Map<String, Order> merged = new LinkedHashMap<>();
+            for (Order o : load(month, productsById)) {
+                merged.put(o.getOrderId(), o);
+            }
+            for (Order o : entry.getValue()) {
+                merged.put(o.getOrderId(), o);
+            }
+            List<Order> segment = new ArrayList<>(merged.values());
+            segment.sort(Comparator.comparingLong(Order::getCreatedTime));
+
+            long written = JsonHelper.writeOrders(segment, segmentPath(month).toString());
+            bytes += written;
+            months.add(month);
+            cache.put(month, new SoftReference<>(Collections.unmodifiableList(segment)));
+            summarize(month, segment, written);
+        }
+        if (!byMonth.isEmpty()) {
+            bytes += writeSummary();
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the totals over all archived orders. Reads only the summary, except for
+     * months whose summary is missing or stale, which are recomputed once.
+     */
+    public synchronized SalesStats getTotals(Map<String, Product> productsById) {
+        boolean recomputed = false;
+        for (YearMonth month : months) {
+            long size = segmentSize(month);
+            if (!summaries.containsKey(month) || summarizedBytes.get(month) != size) {
+                try {
+                    summarize(month, load(month, productsById), size);
+                    recomputed = true;
+                } catch (IOException e) {
+                    System.err.println("Could not summarize archived orders for " + month + ": " + e.getMessage());
+                }
+            }
+        }
+        if (recomputed) {
+            try {
+                writeSummary();
+            } catch (IOException e) {
+                System.err.println("Could not save archive summary: " + e.getMessage());
+            }
+        }
+
+        SalesStats totals = new SalesStats();
+        for (YearMonth month : months) {
+            SalesStats stats = summaries.get(month);
+            if (stats != null) {
+                totals.addAll(stats);
+            }
+        }
+        return totals;
+    }
+
+    // ==================== SUMMARY ====================
+
+    private void summarize(YearMonth month, List<Order> segment, long segmentBytes) {
+        SalesStats stats = new SalesStats();
+        for (Order o : segment) {
+            stats.add(o);
+        }
+        summaries.put(month, stats);
+        summarizedBytes.put(month, segmentBytes);
+    }
+
+    private long segmentSize(YearMonth month) {
+        try {
+            return Files.size(segmentPath(month));
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private void readSummary() {
+        Path file = directory.resolve(SUMMARY_FILE);
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (JsonReader reader = JsonHelper.openReader(file.toString())) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                YearMonth month = null;
+                long segmentBytes = -1;
+                SalesStats stats = new SalesStats();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    switch (reader.nextName()) {
+                        case "month":
+                            month = YearMonth.parse(reader.nextString());
+                            break;
+                        case "bytes":
+                            segmentBytes = reader.nextLong();
+                            break;
+                        case "statuses":
+                            reader.beginArray();
+                            while (reader.hasNext()) {
+                                readStatusTotals(reader, stats);
+                            }
+                            reader.endArray();
+                            break;
+                        default:
+                            reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                if (month != null) {
+                    summaries.put(month, stats);
+                    summarizedBytes.put(month, segmentBytes);
+                }
+            }
+            reader.endArray();
+        } catch (IOException | RuntimeException e) {
+            // Everything is recomputed from the segments on first use
+            System.err.println("Ignoring unreadable archive summary: " + e.getMessage());
+            summaries.clear();
+            summarizedBytes.clear();
+        }
+    }
+
+    private static void readStatusTotals(JsonReader reader, SalesStats stats) throws IOException {
+        OrderStatus status = null;
+        long count = 0;
+        double amount = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "status":
+                    status = OrderStatus.valueOf(reader.nextString());
+                    break;
+                case "count":
+                    count = reader.nextLong();
+                    break;
+                case "amount":
+                    amount = reader.nextDouble();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (status != null) {
+            stats.add(status, count, amount);
+        }
+    }
+
+    private long writeSummary() throws IOException {
+        StringBuilder json = new StringBuilder();
+        json.append("[\n");
+        boolean first = true;
+        for (YearMonth month : new TreeSet<>(summaries.keySet())) {
+            if (!first)
+                json.append(",\n");
+            first = false;
+            json.append("  {\n");
+            json.append("    \"month\": \"").append(month).append("\",\n");
+            json.append("    \"bytes\": ").append(summarizedBytes.get(month)).append(",\n");
+            json.append("    \"statuses\": [");
+            SalesStats stats = summaries.get(month);
+            boolean firstStatus = true;
+            for (OrderStatus status : OrderStatus.values()) {
+                if (stats.getCount(status) == 0)
+                    continue;
+                json.append(firstStatus ? "\n" : ",\n");
+                firstStatus = false;
+                json.append("      { \"status\": \"").append(status.name())
+                        .append("\", \"count\": ").append(stats.getCount(status))
+                        .append(", \"amount\": ").append(stats.getAmount(status)).append(" }");
+            }
+            json.append(firstStatus ? "]\n" : "\n    ]\n");
+            json.append("  }");
+        }
+        json.append("\n]");
+        return JsonHelper.writeFile(directory.resolve(SUMMARY_FILE).toString(), json);
+    }
+
+    public static YearMonth monthOf(Order o) {
+        return YearMonth.from(Instant.ofEpochMilli(o.getCreatedTime()).atZone(ZoneId.systemDefault()));
+    }
+
+    private Path segmentPath(YearMonth month) {
+        return directory.resolve(PREFIX + month + SUFFIX);
+    }
+}
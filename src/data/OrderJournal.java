@@ -0,0 +1,501 @@
+package data;
+
+import model.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Append-only journal of order events (new orders, checkouts and status changes)
+ * and of stock levels.
+ * Each event is one line of JSON appended to the journal file, so the cost of
+ * saving an order no longer grows with the size of the order history.
+ * <p>
+ * Stock is recorded as absolute levels, not deltas, and every stock change goes
+ * through the journal. Replaying entries in order therefore ends at the latest
+ * journaled level even when products.json was saved after some of them.
+ * Appends are queued in memory and written in batches by the data persister thread,
+ * which also periodically compacts the journal back into the orders.json snapshot.
+ * <p>
+ * Other processes may append to the same file. Every line starts with the writer's
+ * node id, so {@link #readForeignEntries} can return just the lines other processes
+ * added since the last call. Appends and compactions take a lock file
+ * (orders.journal.lock), and a compaction carries the other processes' unread lines
+ * over into the fresh journal, so no process's entries are dropped. Each compacted
+ * journal starts with an EPOCH line, which tells readers the file was replaced.
+ */
+public class OrderJournal {
+    private static final String TYPE_ORDER = "ORDER";
+    private static final String TYPE_STATUS = "STATUS";
+    private static final String TYPE_CHECKOUT = "CHECKOUT";
+    private static final String TYPE_STOCK = "STOCK";
+    private static final String EPOCH_PREFIX = "{\"type\":\"EPOCH\",\"epoch\":\"";
+
+    private final Path journalPath;
+    private final Path snapshotPath;
+    private final Path binarySnapshotPath;
+    private final Path lockPath;
+    // Every line written here starts with this, e.g. {"node":3,
+    private final String ownPrefix;
+    private final List<String> pending = new ArrayList<>();
+    private int entries;
+    private long bytesAppended;
+
+    // How far the file has been read by this process, and which file that was: its
+    // file key (null on some platforms) and EPOCH id (null before the first compaction)
+    // (guarded by this)
+    private long readOffset;
+    private Object fileKey;
+    private String epoch;
+    // The same, as of the last order snapshot taken for a compaction
+    private long snapshotOffset;
+    private Object snapshotKey;
+    private String snapshotEpoch;
+
+    /**
+     * @param node this process's node id, which marks the lines it writes
+     */
+    public OrderJournal(String journalFile, String snapshotFile, String binarySnapshotFile, int node) {
+        this.journalPath = Path.of(journalFile);
+        this.lockPath = Path.of(journalFile + ".lock");
+        this.snapshotPath = Path.of(snapshotFile);
+        this.binarySnapshotPath = Path.of(binarySnapshotFile);
+        this.ownPrefix = "{\"node\":" + node + ",";
+    }
+
+    // ==================== APPEND ====================
+
+    public void appendOrder(Order o) {
+        StringBuilder line = line(TYPE_ORDER, 256).append(",\"order\":");
+        JsonHelper.appendOrderJson(line, o);
+        line.append("}");
+        pending.add(line.toString());
+    }
+
+    public void appendStatus(Order o) {
+        pending.add(line(TYPE_STATUS, 96).append(",\"orderId\":\"").append(JsonHelper.escapeJson(o.getOrderId()))
+                .append("\",\"status\":\"").append(o.getStatus().name()).append("\"}").toString());
+    }
+
+    /**
+     * Records a checkout: the new order together with the resulting stock levels of
+     * its products. Being a single line, it is replayed completely or not at all.
+     */
+    public void appendCheckout(Order o, Collection<Product> products) {
+        StringBuilder line = line(TYPE_CHECKOUT, 256).append(",\"order\":");
+        JsonHelper.appendOrderJson(line, o);
+        line.append(",\"stock\":");
+        appendStockJson(line, products);
+        line.append("}");
+        pending.add(line.toString());
+    }
+
+    /** Records the current stock level of a product. */
+    public void appendStock(Product p) {
+        StringBuilder line = line(TYPE_STOCK, 64).append(",\"stock\":");
+        appendStockJson(line, List.of(p));
+        line.append("}");
+        pending.add(line.toString());
+    }
+
+    /** Starts a line: {"node":N,"type":"TYPE" */
+    private StringBuilder line(String type, int capacity) {
+        return new StringBuilder(capacity).append(ownPrefix).append("\"type\":\"").append(type).append('"');
+    }
+
+    private static void appendStockJson(StringBuilder line, Collection<Product> products) {
+        line.append("{");
+        boolean first = true;
+        for (Product p : products) {
+            if (!first)
+                line.append(",");
+            first = false;
+            line.append("\"").append(JsonHelper.escapeJson(p.getId())).append("\":").append(p.getStock());
+        }
+        line.append("}");
+    }
+
+    /** Takes the entries queued since the last call, in append order. */
+    public List<String> drainPending() {
+        List<String> drained = new ArrayList<>(pending);
+        pending.clear();
+        return drained;
+    }
+
+    /** Puts entries back at the front of the queue after a failed write. */
+    public void requeue(List<String> lines) {
+        pending.addAll(0, lines);
+    }
+
+    /**
+     * Appends the given entries to the journal file in one write and forces them to disk.
+     * Everything queued by concurrent callers since the previous write shares this one
+     * fsync (group commit).
+     *
+     * @return the number of bytes written
+     */
+    public long write(List<String> lines) throws IOException {
+        if (lines.isEmpty()) {
+            return 0;
+        }
+        StringBuilder batch = new StringBuilder(lines.size() * 256);
+        for (String line : lines) {
+            batch.append(line).append('\n');
+        }
+        byte[] bytes = batch.toString().getBytes(StandardCharsets.UTF_8);
+        synchronized (this) {
+            // Opened under the lock every time, so a journal another process compacted
+            // away meanwhile is never appended to
+            withFileLock(() -> {
+                try (FileChannel channel = DurableFile.openForAppend(journalPath)) {
+                    DurableFile.append(channel, bytes);
+                }
+                return null;
+            });
+        }
+        entries += lines.size();
+        bytesAppended += bytes.length;
+        return bytes.length;
+    }
+
+    private interface LockedAction<T> {
+        T run() throws IOException;
+    }
+
+    /** Runs the action holding the journal lock file. Caller holds this. */
+    private <T> T withFileLock(LockedAction<T> action) throws IOException {
+        try (FileChannel lockChannel = FileChannel.open(lockPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                FileLock lock = lockChannel.lock()) {
+            return action.run();
+        }
+    }
+
+    /** Number of entries written since the last compaction. */
+    public int size() {
+        return entries;
+    }
+
+    /** Total bytes appended to the journal by this process. */
+    public long getBytesAppended() {
+        return bytesAppended;
+    }
+
+    // ==================== REPLAY ====================
+
+    /**
+     * Applies journal entries written after the last snapshot to the loaded orders.
+     * Entries are idempotent, so replaying a segment the snapshot already covers is harmless.
+     */
+    public void replay(List<Order> orders, Map<String, Product> productsById) throws IOException {
+        Map<String, Order> byId = new HashMap<>();
+        for (Order o : orders) {
+            byId.put(o.getOrderId(), o);
+        }
+        entries = replayFile(journalPath, orders, productsById, byId);
+        if (entries > 0) {
+            System.out.println("Replayed " + entries + " order journal entries.");
+        }
+        synchronized (this) {
+            readOffset = Files.exists(journalPath) ? Files.size(journalPath) : 0;
+            fileKey = currentFileKey();
+            epoch = currentEpoch();
+        }
+    }
+
+    /**
+     * Returns the complete lines other processes appended since the last call, in file
+     * order. If the journal was compacted or replaced by another process, the new file is
+     * read from the start: it holds only lines that compaction carried over, which are
+     * idempotent, so lines seen before are harmless.
+     */
+    public synchronized List<String> readForeignEntries() throws IOException {
+        if (!Files.exists(journalPath)) {
+            return Collections.emptyList();
+        }
+        Object key = currentFileKey();
+        String currentEpoch = currentEpoch();
+        long size = Files.size(journalPath);
+        if (size < readOffset || (fileKey != null && key != null && !fileKey.equals(key))
+                || !Objects.equals(epoch, currentEpoch)) {
+            readOffset = 0;
+        }
+        fileKey = key;
+        epoch = currentEpoch;
+        if (size == readOffset) {
+            return Collections.emptyList();
+        }
+        List<String> lines = new ArrayList<>();
+        readOffset += readForeignLines(readOffset, size, lines);
+        return lines;
+    }
+
+    /**
+     * Adds the complete lines in [from, to) of the journal that other processes wrote.
+     * A last line without its newline is still being written and is left out.
+     *
+     * @return how many bytes the complete lines took
+     */
+    private long readForeignLines(long from, long to, List<String> lines) throws IOException {
+        if (to <= from) {
+            return 0;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) (to - from));
+        try (FileChannel in = FileChannel.open(journalPath, StandardOpenOption.READ)) {
+            int n = 0;
+            while (buffer.hasRemaining() && n >= 0) {
+                n = in.read(buffer, from + buffer.position());
+            }
+        }
+        byte[] tail = buffer.array();
+        int length = buffer.position();
+
+        int lineStart = 0;
+        for (int i = 0; i < length; i++) {
+            if (tail[i] != '\n') {
+                continue;
+            }
+            if (i > lineStart) {
+                String line = new String(tail, lineStart, i - lineStart, StandardCharsets.UTF_8);
+                if (!line.startsWith(ownPrefix) && !line.startsWith(EPOCH_PREFIX)) {
+                    lines.add(line);
+                }
+            }
+            lineStart = i + 1;
+        }
+        return lineStart;
+    }
+
+    /** The EPOCH id on the first line of the journal, or null if it has none. */
+    private String currentEpoch() {
+        try (FileChannel in = FileChannel.open(journalPath, StandardOpenOption.READ)) {
+            ByteBuffer head = ByteBuffer.allocate(EPOCH_PREFIX.length() + 32);
+            int n = 0;
+            while (head.hasRemaining() && n >= 0) {
+                n = in.read(head, head.position());
+            }
+            String start = new String(head.array(), 0, head.position(), StandardCharsets.UTF_8);
+            int end = start.indexOf('"', EPOCH_PREFIX.length());
+            return start.startsWith(EPOCH_PREFIX) && end > 0 ? start.substring(EPOCH_PREFIX.length(), end) : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private Object currentFileKey() {
+        try {
+            return Files.readAttributes(journalPath, BasicFileAttributes.class).fileKey();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private int replayFile(Path path, List<Order> orders, Map<String, Product> productsById,
+            Map<String, Order> byId) throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        int count = 0;
+        try (BufferedReader lines = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = lines.readLine()) != null) {
+                if (line.isBlank() || line.startsWith(EPOCH_PREFIX))
+                    continue;
+                try {
+                    applyEntry(new JsonReader(new StringReader(line)), orders, productsById, byId);
+                    count++;
+                } catch (IOException | IllegalArgumentException e) {
+                    // A torn last line from a crash mid-append; everything before it is intact
+                    System.err.println("Skipping unreadable journal entry in " + path + ": " + e.getMessage());
+                }
+            }
+        }
+        return count;
+    }
+
+    private void applyEntry(JsonReader reader, List<Order> orders, Map<String, Product> productsById,
+            Map<String, Order> byId) throws IOException {
+        Entry entry = Entry.read(reader, productsById);
+
+        // Stock levels are absolute, so setting them again is harmless
+        for (Map.Entry<String, Integer> level : entry.stock.entrySet()) {
+            Product p = productsById.get(level.getKey());
+            if (p != null) {
+                try {
+                    p.setStock(level.getValue());
+                } catch (IllegalArgumentException | IllegalStateException e) {
+                    System.err.println("Keeping stock of " + p.getId() + ": " + e.getMessage());
+                }
+            }
+        }
+        if (entry.order != null) {
+            if (!byId.containsKey(entry.order.getOrderId())) {
+                orders.add(entry.order);
+                byId.put(entry.order.getOrderId(), entry.order);
+            }
+        } else if (entry.orderId != null && entry.status != null) {
+            Order existing = byId.get(entry.orderId);
+            if (existing != null) {
+                existing.setStatus(entry.status);
+            }
+        }
+    }
+
+    /**
+     * One parsed journal line: a new order, a status change, and/or absolute stock levels.
+     */
+    public static class Entry {
+        public final Order order;
+        public final String orderId;
+        public final OrderStatus status;
+        public final Map<String, Integer> stock;
+
+        private Entry(Order order, String orderId, OrderStatus status, Map<String, Integer> stock) {
+            this.order = order;
+            this.orderId = orderId;
+            this.status = status;
+            this.stock = stock;
+        }
+
+        public static Entry parse(String line, Map<String, Product> productsById) throws IOException {
+            return read(new JsonReader(new StringReader(line)), productsById);
+        }
+
+        private static Entry read(JsonReader reader, Map<String, Product> productsById) throws IOException {
+            String type = null;
+            String orderId = null;
+            OrderStatus status = null;
+            Order order = null;
+            Map<String, Integer> stock = Collections.emptyMap();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "type":
+                        type = reader.nextString();
+                        break;
+                    case "order":
+                        order = JsonHelper.readOrder(reader, productsById);
+                        break;
+                    case "orderId":
+                        orderId = reader.nextString();
+                        break;
+                    case "status":
+                        status = OrderStatus.valueOf(reader.nextString());
+                        break;
+                    case "stock":
+                        stock = new LinkedHashMap<>();
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            stock.put(reader.nextName(), reader.nextInt());
+                        }
+                        reader.endObject();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+            boolean placesOrder = TYPE_ORDER.equals(type) || TYPE_CHECKOUT.equals(type);
+            boolean changesStatus = TYPE_STATUS.equals(type);
+            return new Entry(placesOrder ? order : null, changesStatus ? orderId : null,
+                    changesStatus ? status : null, stock);
+        }
+    }
+
+    // ==================== COMPACTION ====================
+
+    /**
+     * Copies the orders as they are right now, so the snapshot is not affected by
+     * status changes made while it is being written.
+     */
+    public static List<Order> snapshotOf(List<Order> orders) {
+        List<Order> snapshot = new ArrayList<>(orders.size());
+        for (Order o : orders) {
+            snapshot.add(new Order(o.getOrderId(), o.getBuyerUsername(), o.getRoomName(), o.getItems(),
+                    o.getStatus(), o.getCreatedTime()));
+        }
+        return snapshot;
+    }
+
+    /**
+     * Notes how far the journal had been read when an order snapshot for
+     * {@link #compact} was taken. Call it while the snapshot is taken, with every line
+     * read so far already applied to the orders.
+     */
+    public synchronized void markSnapshot() {
+        snapshotOffset = readOffset;
+        snapshotKey = fileKey;
+        snapshotEpoch = epoch;
+    }
+
+    /**
+     * Rewrites orders.json and the binary snapshot, then starts a fresh journal.
+     * The snapshot must include every entry written here and every line read up to
+     * {@link #markSnapshot}, and products.json must already hold the journaled stock
+     * levels. Lines other processes appended after that point are carried over into the
+     * fresh journal. If the process dies after the new snapshot is in place but before
+     * the journal is replaced, the old entries are simply replayed again on the next start.
+     * The binary snapshot is written last, so it is only used on startup when it
+     * is at least as new as orders.json.
+     * <p>
+     * Nothing is written if another process compacted since the snapshot was taken:
+     * either the journal was replaced or {@code upToDate} says orders.json changed.
+     * Those changes are picked up first and the next flush compacts again.
+     *
+     * @param upToDate checks, under the journal lock, that orders.json is the one the
+     *                 snapshot was built on
+     * @param written  runs under the journal lock once the new orders.json is in place
+     * @return the number of bytes written, 0 if the compaction was skipped
+     */
+    public long compact(List<Order> snapshot, BooleanSupplier upToDate, Runnable written) throws IOException {
+        synchronized (this) {
+            return withFileLock(() -> {
+                Object key = currentFileKey();
+                boolean replaced = Files.exists(journalPath)
+                        ? (snapshotKey != null && key != null && !snapshotKey.equals(key))
+                                || !Objects.equals(snapshotEpoch, currentEpoch())
+                        : snapshotOffset > 0;
+                if (replaced || !upToDate.getAsBoolean()) {
+                    System.out.println("Order journal was compacted by another process; compacting later");
+                    return 0L;
+                }
+                List<String> carried = new ArrayList<>();
+                if (Files.exists(journalPath)) {
+                    readForeignLines(snapshotOffset, Files.size(journalPath), carried);
+                }
+
+                long bytes = JsonHelper.writeOrders(snapshot, snapshotPath.toString());
+                bytes += BinarySnapshot.writeOrders(snapshot, binarySnapshotPath.toString());
+                written.run();
+
+                // A new file, so readers elsewhere notice the replacement by its EPOCH
+                String newEpoch = OrderIdGenerator.next();
+                StringBuilder fresh = new StringBuilder(EPOCH_PREFIX).append(newEpoch).append("\"}\n");
+                for (String line : carried) {
+                    fresh.append(line).append('\n');
+                }
+                byte[] journal = fresh.toString().getBytes(StandardCharsets.UTF_8);
+                DurableFile.writeAtomically(journalPath, journal);
+                bytes += journal.length;
+
+                // The carried lines are read again like any other process's lines
+                readOffset = 0;
+                fileKey = currentFileKey();
+                epoch = newEpoch;
+                entries = carried.size();
+                System.out.println("Order journal compacted into " + snapshotPath
+                        + (carried.isEmpty() ? "" : ", " + carried.size() + " entries from other processes kept"));
+                return bytes;
+            });
+        }
+    }
+
+    public void close() throws IOException {
+        // Appends open and close the file themselves; nothing is held between them
+    }
+}
@@ -0,0 +1,72 @@
+package data;
+
+import model.Order;
+import model.OrderStatus;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * One page of a buyer's order history, newest first, with the cursor for the page
+ * before it. Cursors are opaque to callers: "time:orderId" of the last order shown, or
+ * "time:" when a page ended at a month boundary of the archive.
+ */
+public class OrderPage {
+    /** Oldest first; the order pages are cut from, read backwards. */
+    public static final Comparator<Order> BY_PLACEMENT = Comparator.comparingLong(Order::getCreatedTime)
+            .thenComparing(Order::getOrderId);
+
+    private final List<Order> orders;
+    private final String nextCursor;
+
+    public OrderPage(List<Order> orders, String nextCursor) {
+        this.orders = Collections.unmodifiableList(orders);
+        this.nextCursor = nextCursor;
+    }
+
+    /** The orders of this page, newest first. */
+    public List<Order> getOrders() {
+        return orders;
+    }
+
+    /** Cursor for the older orders, or null if this is the last page. */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasMore() {
+        return nextCursor != null;
+    }
+
+    // ==================== Cursors ====================
+
+    /** Cursor for the orders placed before the given one. */
+    static String cursorBefore(Order o) {
+        return o.getCreatedTime() + ":" + o.getOrderId();
+    }
+
+    /** Cursor for the orders placed before the given time. */
+    static String cursorBefore(long time) {
+        return time + ":";
+    }
+
+    /**
+     * The cursor as an order to compare against with {@link #BY_PLACEMENT}: pages hold
+     * the orders that sort before it. Throws IllegalArgumentException if it is malformed.
+     */
+    static Order keyOf(String cursor) {
+        int colon = cursor.indexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("Bad history cursor: " + cursor);
+        }
+        long time;
+        try {
+            time = Long.parseLong(cursor.substring(0, colon));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad history cursor: " + cursor);
+        }
+        // An empty id sorts before every order placed at that time
+        return new Order(cursor.substring(colon + 1), "", "", List.of(), OrderStatus.PENDING, time);
+    }
+}
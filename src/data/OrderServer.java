@@ -0,0 +1,644 @@
+package data;
+
+import model.*;
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serves a {@link Store} over TCP, so several kiosks and the kitchen screen can share
+ * one set of data. Each connection is handled on its own virtual thread.
+ * <p>
+ * The protocol is one line of compact JSON per request and per response:
+ * <pre>
+ * -&gt; {"op":"checkoutReserved","args":["cart-1","buyer","101",[{"productId":"P001","quantity":2}]]}
+ * &lt;- {"result":{...order...}}   or   {"error":"IllegalStateException","message":"..."}
+ * </pre>
+ * Objects are identified by id (product id, order id, username). Stock is reserved
+ * for a cart named by the client; carts belong to the connection that reserved for
+ * them, and whatever they still hold is released when that connection closes.
+ * <p>
+ * After {@code {"op":"subscribe","args":[]}} the connection carries store events
+ * instead, one {@code {"event":"ORDER_ADDED","id":"..."}} line per change.
+ * <p>
+ * A connection must log in with {@code authenticate} before anything else, and each
+ * op checks the role of the user it logged in as: buyers only see and order for
+ * themselves, sellers also handle orders, and only admins change products and users.
+ * Passwords are never sent back. The server only listens on the loopback interface
+ * unless it is given an address to bind to.
+ */
+public class OrderServer implements AutoCloseable {
+    public static final int DEFAULT_PORT = 5150;
+
+    // How often an idle event stream checks whether the server is shutting down
+    private static final long EVENT_POLL_MS = 1000;
+
+    private static final String ADMIN = "ADMIN";
+    private static final String SELLER = "SELLER";
+
+    // Ops only admins may run
+    private static final Set<String> ADMIN_OPS = Set.of(
+            "addProduct", "removeProduct", "updateProduct", "addOrder",
+            "getUsers", "findUser", "addUser", "removeUser", "updateUser", "usernameExists",
+            "getTotalSales", "getTotalOrdersDelivered", "getSalesSeries", "getProductSales");
+    // Ops for admins and sellers, who work through everyone's orders
+    private static final Set<String> STAFF_OPS = Set.of(
+            "getOrders", "findOrder", "getArchivedMonths", "getArchivedOrders", "getOrdersByStatus",
+            "countOrdersByStatus", "getPendingOrdersCount", "updateOrderStatus");
+
+    private final Store store;
+    private final ServerSocket serverSocket;
+    private final ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor();
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private final AtomicLong connectionCount = new AtomicLong();
+    private Thread acceptThread;
+
+    /** Serves on the loopback interface only, for clients on this machine. */
+    public OrderServer(Store store, int port) throws IOException {
+        this(store, InetAddress.getLoopbackAddress(), port);
+    }
+
+    /**
+     * @param address the interface to listen on, e.g. the kiosk network's, or the
+     *                wildcard address for all of them
+     */
+    public OrderServer(Store store, InetAddress address, int port) throws IOException {
+        this.store = store;
+        this.serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(address, port));
+    }
+
+    /** Starts accepting connections on a background thread. */
+    public void start() {
+        acceptThread = new Thread(this::acceptLoop, "order-server");
+        acceptThread.start();
+        System.out.println("Order server listening on " + serverSocket.getInetAddress().getHostAddress()
+                + " port " + getPort());
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void close() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            System.err.println("Error closing order server: " + e.getMessage());
+        }
+        for (Socket socket : connections) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already closed by the client
+            }
+        }
+        clients.close();
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                connections.add(socket);
+                clients.submit(() -> serve(socket));
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    System.err.println("Error accepting connection: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // ==================== CONNECTION ====================
+
+    /** What one connection has asked for so far. */
+    private static class Session {
+        final long id;
+        // Carts this connection reserved stock for, as named in the store
+        final Set<String> holders = new HashSet<>();
+        // Who logged in on this connection; null until then
+        User user;
+        boolean subscribed;
+
+        Session(long id) {
+            this.id = id;
+        }
+
+        /** The store's name for a client's cart, so connections cannot touch each other's. */
+        String holder(String cart) {
+            String holder = "connection-" + id + "/" + cart;
+            holders.add(holder);
+            return holder;
+        }
+    }
+
+    private void serve(Socket socket) {
+        Session session = new Session(connectionCount.incrementAndGet());
+        try (socket;
+                BufferedReader in = new BufferedReader(
+                        new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                Writer out = new BufferedWriter(
+                        new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                out.write(handle(line, session));
+                out.write('\n');
+                out.flush();
+                if (session.subscribed) {
+                    streamEvents(socket, out);
+                    break;
+                }
+            }
+        } catch (SocketException e) {
+            // Client went away
+        } catch (IOException e) {
+            System.err.println("Error serving " + socket.getRemoteSocketAddress() + ": " + e.getMessage());
+        } finally {
+            connections.remove(socket);
+            // One cart failing to release must not keep the others' stock held
+            for (String holder : session.holders) {
+                try {
+                    store.releaseAllStock(holder);
+                } catch (RuntimeException e) {
+                    System.err.println("Could not release stock held by " + holder + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes store events to a subscribed connection until it closes. Events are queued
+     * by the store's event thread, so a slow client never holds up other listeners.
+     */
+    private void streamEvents(Socket socket, Writer out) throws IOException {
+        BlockingQueue<StoreEvent> events = new LinkedBlockingQueue<>();
+        StoreListener listener = events::add;
+        store.addListener(listener);
+        try {
+            while (!socket.isClosed()) {
+                StoreEvent event = events.poll(EVENT_POLL_MS, TimeUnit.MILLISECONDS);
+                if (event == null) {
+                    continue;
+                }
+                // Send whatever else has piled up in the same write
+                do {
+                    out.write("{\"event\":\"" + event.getType() + "\",\"id\":\""
+                            + JsonHelper.escapeJson(event.getId()) + "\"}\n");
+                } while ((event = events.poll()) != null);
+                out.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            store.removeListener(listener);
+        }
+    }
+
+    /** Runs one request and returns the response line. */
+    private String handle(String request, Session session) {
+        StringBuilder response = new StringBuilder(256);
+        try {
+            JsonReader reader = new JsonReader(new StringReader(request));
+            reader.beginObject();
+            String op = null;
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (name.equals("op")) {
+                    op = reader.nextString();
+                } else if (name.equals("args") && op != null) {
+                    reader.beginArray();
+                    response.append("{\"result\":");
+                    dispatch(op, reader, response, session);
+                    response.append("}");
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            if (response.length() == 0) {
+                throw new IllegalArgumentException("Request needs an op followed by args");
+            }
+        } catch (IOException | RuntimeException e) {
+            response.setLength(0);
+            String type = e instanceof IllegalStateException || e instanceof IllegalArgumentException
+                    ? e.getClass().getSimpleName()
+                    : "RuntimeException";
+            response.append("{\"error\":\"").append(type)
+                    .append("\",\"message\":\"").append(JsonHelper.escapeJson(e.getMessage())).append("\"}");
+        }
+        return response.toString();
+    }
+
+    private void dispatch(String op, JsonReader args, StringBuilder out, Session session)
+            throws IOException {
+        if (op.equals("authenticate")) {
+            // Logs the connection in as the user, or out again if the login fails
+            session.user = store.authenticate(nextArg(args), nextArg(args));
+            writeUser(out, session.user);
+            return;
+        }
+        checkAllowed(op, session);
+        switch (op) {
+
+            // Products
+            case "getProducts":
+                writeProducts(out, store.getProducts());
+                break;
+            case "getProductsByCategory":
+                writeProducts(out, store.getProductsByCategory(Category.valueOf(nextArg(args))));
+                break;
+            case "searchProducts": {
+                String keyword = nextArg(args);
+                // The category is optional
+                Category category = args.hasNext() ? Category.valueOf(args.nextString()) : null;
+                writeProducts(out, store.searchProducts(keyword, category));
+                break;
+            }
+            case "findProduct":
+                writeProduct(out, store.findProduct(nextArg(args)));
+                break;
+            case "addProduct":
+                store.addProduct(nextProduct(args));
+                out.append("null");
+                break;
+            case "removeProduct": {
+                Product p = store.findProduct(nextArg(args));
+                if (p != null) {
+                    store.removeProduct(p);
+                }
+                out.append("null");
+                break;
+            }
+            case "updateProduct": {
+                Product old = requireProduct(nextArg(args));
+                store.updateProduct(old, nextProduct(args));
+                out.append("null");
+                break;
+            }
+            case "reserveStock": {
+                String holder = session.holder(nextArg(args));
+                Product p = requireProduct(nextArg(args));
+                out.append(store.reserveStock(holder, p, nextQuantity(args)));
+                break;
+            }
+            case "releaseStock": {
+                String holder = session.holder(nextArg(args));
+                Product p = requireProduct(nextArg(args));
+                store.releaseStock(holder, p, nextQuantity(args));
+                out.append("null");
+                break;
+            }
+            case "releaseAllStock":
+                store.releaseAllStock(session.holder(nextArg(args)));
+                out.append("null");
+                break;
+
+            // Orders
+            case "getOrders":
+                writeOrders(out, store.getOrders());
+                break;
+            case "findOrder":
+                writeOrder(out, store.findOrder(nextArg(args)));
+                break;
+            case "getArchivedMonths": {
+                out.append("[");
+                List<YearMonth> months = store.getArchivedMonths();
+                for (int i = 0; i < months.size(); i++) {
+                    out.append(i > 0 ? ",\"" : "\"").append(months.get(i)).append("\"");
+                }
+                out.append("]");
+                break;
+            }
+            case "getArchivedOrders":
+                writeOrders(out, store.getArchivedOrders(YearMonth.parse(nextArg(args))));
+                break;
+            case "getOrdersByStatus":
+                writeOrders(out, store.getOrdersByStatus(OrderStatus.valueOf(nextArg(args))));
+                break;
+            case "countOrdersByStatus":
+                out.append(store.countOrdersByStatus(OrderStatus.valueOf(nextArg(args))));
+                break;
+            case "getOrdersByBuyer":
+                writeOrders(out, store.getOrdersByBuyer(checkBuyer(session, nextArg(args))));
+                break;
+            case "getOrderHistory": {
+                String buyer = checkBuyer(session, nextArg(args));
+                args.hasNext();
+                String cursor = args.nextNull() ? null : args.nextString();
+                OrderPage page = store.getOrderHistory(buyer, cursor, nextInt(args));
+                out.append("{\"orders\":");
+                writeOrders(out, page.getOrders());
+                out.append(",\"next\":");
+                out.append(page.hasMore() ? "\"" + JsonHelper.escapeJson(page.getNextCursor()) + "\"" : "null");
+                out.append("}");
+                break;
+            }
+            case "checkout":
+                writeOrder(out, store.checkout(checkBuyer(session, nextArg(args)), nextArg(args), nextItems(args)));
+                break;
+            case "checkoutReserved": {
+                String holder = session.holder(nextArg(args));
+                String buyer = checkBuyer(session, nextArg(args));
+                writeOrder(out, store.checkoutReserved(holder, buyer, nextArg(args), nextItems(args)));
+                break;
+            }
+            case "addOrder":
+                args.hasNext();
+                store.addOrder(JsonHelper.readOrder(args, productsById()));
+                out.append("null");
+                break;
+            case "updateOrderStatus": {
+                String orderId = nextArg(args);
+                Order order = store.findOrder(orderId);
+                if (order == null) {
+                    throw new IllegalStateException("Order " + orderId + " is not active");
+                }
+                store.updateOrderStatus(order, OrderStatus.valueOf(nextArg(args)));
+                out.append("null");
+                break;
+            }
+
+            // Users
+            case "getUsers":
+                writeUsers(out, store.getUsers());
+                break;
+            case "findUser":
+                writeUser(out, store.findUser(nextArg(args)));
+                break;
+            case "addUser":
+                store.addUser(nextUser(args));
+                out.append("null");
+                break;
+            case "removeUser": {
+                User u = store.findUser(nextArg(args));
+                if (u != null) {
+                    store.removeUser(u);
+                }
+                out.append("null");
+                break;
+            }
+            case "updateUser": {
+                String username = nextArg(args);
+                User old = store.findUser(username);
+                if (old == null) {
+                    throw new IllegalStateException("Unknown user " + username);
+                }
+                User updated = nextUser(args);
+                if (updated.getPassword() == null) {
+                    // Clients never see passwords, so an edit without one keeps the old one
+                    updated.setPassword(old.getPassword());
+                }
+                store.updateUser(old, updated);
+                out.append("null");
+                break;
+            }
+            case "usernameExists":
+                out.append(store.usernameExists(nextArg(args)));
+                break;
+
+            // Statistics
+            case "getTotalSales":
+                out.append(store.getTotalSales());
+                break;
+            case "getTotalOrdersDelivered":
+                out.append(store.getTotalOrdersDelivered());
+                break;
+            case "getPendingOrdersCount":
+                out.append(store.getPendingOrdersCount());
+                break;
+            case "getSalesSeries": {
+                SalesRollup.Granularity granularity = SalesRollup.Granularity.valueOf(nextArg(args));
+                long from = nextLong(args);
+                long to = nextLong(args);
+                args.hasNext();
+                Category category = args.nextNull() ? null : Category.valueOf(args.nextString());
+                out.append("[");
+                List<SalesRollup.Point> points = store.getSalesSeries(granularity, from, to, category);
+                for (int i = 0; i < points.size(); i++) {
+                    if (i > 0)
+                        out.append(",");
+                    out.append("{\"start\":").append(points.get(i).getStart()).append(",");
+                    writeTotals(out, points.get(i).getTotals());
+                    out.append("}");
+                }
+                out.append("]");
+                break;
+            }
+            case "getProductSales": {
+                SalesRollup.Granularity granularity = SalesRollup.Granularity.valueOf(nextArg(args));
+                Map<String, SalesRollup.Totals> sales = store.getProductSales(granularity, nextLong(args), nextLong(args));
+                out.append("[");
+                boolean first = true;
+                for (Map.Entry<String, SalesRollup.Totals> entry : sales.entrySet()) {
+                    if (!first)
+                        out.append(",");
+                    first = false;
+                    out.append("{\"name\":\"").append(JsonHelper.escapeJson(entry.getKey())).append("\",");
+                    writeTotals(out, entry.getValue());
+                    out.append("}");
+                }
+                out.append("]");
+                break;
+            }
+
+            case "requestFlush":
+                store.requestFlush().join();
+                out.append("null");
+                break;
+            case "subscribe":
+                session.subscribed = true;
+                out.append("null");
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown op " + op);
+        }
+    }
+
+    // ==================== ACCESS ====================
+
+    /** Refuses the op unless the connection has logged in as a user allowed to run it. */
+    private static void checkAllowed(String op, Session session) {
+        if (session.user == null) {
+            throw new IllegalStateException("Log in before " + op);
+        }
+        String role = session.user.getRole();
+        if (ADMIN_OPS.contains(op) && !ADMIN.equals(role)
+                || STAFF_OPS.contains(op) && !ADMIN.equals(role) && !SELLER.equals(role)) {
+            throw new IllegalStateException(op + " is not allowed for " + role);
+        }
+    }
+
+    /** Lets buyers act only for themselves; staff may act for any buyer. */
+    private static String checkBuyer(Session session, String buyerUsername) {
+        String role = session.user.getRole();
+        if (!ADMIN.equals(role) && !SELLER.equals(role) && !session.user.getUsername().equals(buyerUsername)) {
+            throw new IllegalStateException("Not allowed to act for " + buyerUsername);
+        }
+        return buyerUsername;
+    }
+
+    // ==================== ARGUMENTS ====================
+
+    private static String nextArg(JsonReader args) throws IOException {
+        args.hasNext();
+        return args.nextString();
+    }
+
+    private static int nextInt(JsonReader args) throws IOException {
+        args.hasNext();
+        return args.nextInt();
+    }
+
+    /** Reads a stock quantity, which must be positive. */
+    private static int nextQuantity(JsonReader args) throws IOException {
+        return checkQuantity(nextInt(args));
+    }
+
+    private static int checkQuantity(int quantity) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Quantity must be positive: " + quantity);
+        }
+        return quantity;
+    }
+
+    private static long nextLong(JsonReader args) throws IOException {
+        args.hasNext();
+        return args.nextLong();
+    }
+
+    private static Product nextProduct(JsonReader args) throws IOException {
+        args.hasNext();
+        Product p = JsonHelper.readProduct(args);
+        // Reservations are only held on the server's own products, not on copies sent by clients
+        return new Product(p.getId(), p.getName(), p.getPrice(), p.getDescription(), p.getStock(), p.getCategory());
+    }
+
+    private static User nextUser(JsonReader args) throws IOException {
+        args.hasNext();
+        return JsonHelper.readUser(args);
+    }
+
+    /** Reads cart lines sent as [{"productId":..,"quantity":..}], resolved against the store. */
+    private List<CartItem> nextItems(JsonReader args) throws IOException {
+        args.hasNext();
+        List<CartItem> items = new ArrayList<>();
+        args.beginArray();
+        while (args.hasNext()) {
+            String productId = null;
+            int quantity = 0;
+            args.beginObject();
+            while (args.hasNext()) {
+                switch (args.nextName()) {
+                    case "productId":
+                        productId = args.nextString();
+                        break;
+                    case "quantity":
+                        quantity = args.nextInt();
+                        break;
+                    default:
+                        args.skipValue();
+                }
+            }
+            args.endObject();
+            items.add(new CartItem(requireProduct(productId), checkQuantity(quantity)));
+        }
+        args.endArray();
+        return items;
+    }
+
+    private Product requireProduct(String id) {
+        Product p = store.findProduct(id);
+        if (p == null) {
+            throw new IllegalStateException("Product " + id + " is no longer available");
+        }
+        return p;
+    }
+
+    private Map<String, Product> productsById() {
+        Map<String, Product> byId = new HashMap<>();
+        for (Product p : store.getProducts()) {
+            byId.putIfAbsent(p.getId(), p);
+        }
+        return byId;
+    }
+
+    // ==================== RESULTS ====================
+
+    private static void writeProduct(StringBuilder out, Product p) {
+        if (p == null) {
+            out.append("null");
+        } else {
+            JsonHelper.appendProductJson(out, p);
+        }
+    }
+
+    private static void writeProducts(StringBuilder out, List<Product> products) {
+        out.append("[");
+        for (int i = 0; i < products.size(); i++) {
+            if (i > 0)
+                out.append(",");
+            JsonHelper.appendProductJson(out, products.get(i));
+        }
+        out.append("]");
+    }
+
+    private static void writeOrder(StringBuilder out, Order o) {
+        if (o == null) {
+            out.append("null");
+        } else {
+            JsonHelper.appendOrderJson(out, o);
+        }
+    }
+
+    private static void writeOrders(StringBuilder out, List<Order> orders) {
+        out.append("[");
+        for (int i = 0; i < orders.size(); i++) {
+            if (i > 0)
+                out.append(",");
+            JsonHelper.appendOrderJson(out, orders.get(i));
+        }
+        out.append("]");
+    }
+
+    /** Writes the fields of a {@link SalesRollup.Totals}, without braces. */
+    private static void writeTotals(StringBuilder out, SalesRollup.Totals t) {
+        out.append("\"revenue\":").append(t.getRevenue())
+                .append(",\"orders\":").append(t.getOrders())
+                .append(",\"units\":").append(t.getUnits());
+    }
+
+    private static void writeUser(StringBuilder out, User u) {
+        if (u == null) {
+            out.append("null");
+        } else {
+            JsonHelper.appendUserJson(out, u, false);
+        }
+    }
+
+    private static void writeUsers(StringBuilder out, List<User> users) {
+        out.append("[");
+        for (int i = 0; i < users.size(); i++) {
+            if (i > 0)
+                out.append(",");
+            JsonHelper.appendUserJson(out, users.get(i), false);
+        }
+        out.append("]");
+    }
+}
@@ -0,0 +1,59 @@
+package data;
+
+import model.Order;
+import model.Product;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One batch of kitchen work: a product cooked once for several orders.
+ * Created by {@link KitchenQueue#nextTicket()}.
+ */
+public class PrepTicket {
+    private final Product product;
+    private final int quantity;
+    private final List<Order> orders;
+    private final long deadline;
+    private boolean started;
+
+    PrepTicket(Product product, int quantity, List<Order> orders, long deadline) {
+        this.product = product;
+        this.quantity = quantity;
+        this.orders = Collections.unmodifiableList(orders);
+        this.deadline = deadline;
+    }
+
+    public Product getProduct() {
+        return product;
+    }
+
+    /** Units of the product across all orders on the ticket. */
+    public int getQuantity() {
+        return quantity;
+    }
+
+    /** The orders this ticket cooks for, most urgent first. */
+    public List<Order> getOrders() {
+        return orders;
+    }
+
+    /** Due time of the most urgent order on the ticket, in epoch millis. */
+    public long getDeadline() {
+        return deadline;
+    }
+
+    public boolean isStarted() {
+        return started;
+    }
+
+    void markStarted() {
+        started = true;
+    }
+
+    @Override
+    public String toString() {
+        return product.getName() + " x" + quantity + " (" + orders.size() +
+                (orders.size() == 1 ? " order)" : " orders)");
+    }
+}
@@ -0,0 +1,216 @@
+package data;
+
+import model.Category;
+import model.Product;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Inverted n-gram index over product names and descriptions, for substring search.
+ * Every 1-, 2- and 3-character sequence of the lowercased text maps to a sorted list
+ * of the products containing it. A query of up to three characters is answered by one
+ * list; a longer one by intersecting the lists of its trigrams, smallest first, and
+ * checking the few remaining candidates with {@code contains}.
+ * <p>
+ * Products are identified by instance, since ids need not be unique. Not thread-safe:
+ * the store updates and queries it under its lock.
+ */
+public class ProductSearchIndex {
+    private final Map<Long, Postings> postings = new HashMap<>();
+    private final Map<Product, Integer> docIds = new IdentityHashMap<>();
+    // By doc id; null once removed
+    private final List<Product> docs = new ArrayList<>();
+    private final List<String> texts = new ArrayList<>();
+
+    public void clear() {
+        postings.clear();
+        docIds.clear();
+        docs.clear();
+        texts.clear();
+    }
+
+    public void add(Product p) {
+        if (docIds.containsKey(p)) {
+            update(p);
+            return;
+        }
+        int doc = docs.size();
+        docIds.put(p, doc);
+        docs.add(p);
+        texts.add(null);
+        index(doc, p);
+    }
+
+    public void remove(Product p) {
+        Integer doc = docIds.remove(p);
+        if (doc != null) {
+            unindex(doc);
+            docs.set(doc, null);
+        }
+    }
+
+    /** Re-indexes a product after its name or description changed in place. */
+    public void update(Product p) {
+        Integer doc = docIds.get(p);
+        if (doc == null) {
+            add(p);
+            return;
+        }
+        if (!textOf(p).equals(texts.get(doc))) {
+            unindex(doc);
+            index(doc, p);
+        }
+    }
+
+    public int size() {
+        return docIds.size();
+    }
+
+    /**
+     * Products whose name or description contains the keyword (ignoring case), in the
+     * order they were added.
+     *
+     * @param category only products in this category, or null for all
+     */
+    public List<Product> search(String keyword, Category category) {
+        String query = keyword.toLowerCase(Locale.ROOT);
+        List<Product> result = new ArrayList<>();
+        if (query.isEmpty()) {
+            for (Product p : docs) {
+                if (p != null && (category == null || p.getCategory() == category)) {
+                    result.add(p);
+                }
+            }
+            return result;
+        }
+
+        if (query.length() <= 3) {
+            // The n-gram itself is the answer; no checking needed
+            Postings list = postings.get(gram(query, 0, query.length()));
+            if (list != null) {
+                for (int i = 0; i < list.size; i++) {
+                    Product p = docs.get(list.ids[i]);
+                    if (category == null || p.getCategory() == category) {
+                        result.add(p);
+                    }
+                }
+            }
+            return result;
+        }
+
+        Postings[] lists = new Postings[query.length() - 2];
+        for (int i = 0; i < lists.length; i++) {
+            lists[i] = postings.get(gram(query, i, 3));
+            if (lists[i] == null) {
+                return result;
+            }
+        }
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+        Postings smallest = lists[0];
+        candidates: for (int i = 0; i < smallest.size; i++) {
+            int doc = smallest.ids[i];
+            for (int l = 1; l < lists.length; l++) {
+                if (!lists[l].contains(doc)) {
+                    continue candidates;
+                }
+            }
+            Product p = docs.get(doc);
+            // Having all trigrams does not mean they are adjacent
+            if ((category == null || p.getCategory() == category) && texts.get(doc).contains(query)) {
+                result.add(p);
+            }
+        }
+        return result;
+    }
+
+    // ==================== HELPER METHODS ====================
+
+    private void index(int doc, Product p) {
+        String text = textOf(p);
+        texts.set(doc, text);
+        for (long gram : gramsOf(text)) {
+            postings.computeIfAbsent(gram, g -> new Postings()).add(doc);
+        }
+    }
+
+    private void unindex(int doc) {
+        for (long gram : gramsOf(texts.get(doc))) {
+            Postings list = postings.get(gram);
+            if (list != null && list.remove(doc) && list.size == 0) {
+                postings.remove(gram);
+            }
+        }
+        texts.set(doc, null);
+    }
+
+    /** Name and description, lowercased; the newline keeps matches from spanning both. */
+    private static String textOf(Product p) {
+        return (p.getName() + "\n" + p.getDescription()).toLowerCase(Locale.ROOT);
+    }
+
+    private static long[] gramsOf(String text) {
+        Set<Long> grams = new HashSet<>();
+        for (int i = 0; i < text.length(); i++) {
+            for (int n = 1; n <= 3 && i + n <= text.length() && text.charAt(i + n - 1) != '\n'; n++) {
+                grams.add(gram(text, i, n));
+            }
+        }
+        long[] result = new long[grams.size()];
+        int i = 0;
+        for (long g : grams) {
+            result[i++] = g;
+        }
+        return result;
+    }
+
+    /** Packs up to three chars and the length into one key. */
+    private static long gram(String s, int start, int length) {
+        long key = length;
+        for (int i = 0; i < length; i++) {
+            key = (key << 16) | s.charAt(start + i);
+        }
+        return key;
+    }
+
+    /** Sorted doc ids. */
+    private static class Postings {
+        int[] ids = new int[4];
+        int size;
+
+        void add(int doc) {
+            int at = Arrays.binarySearch(ids, 0, size, doc);
+            if (at >= 0) {
+                return;
+            }
+            at = -at - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, at, ids, at + 1, size - at);
+            ids[at] = doc;
+            size++;
+        }
+
+        boolean remove(int doc) {
+            int at = Arrays.binarySearch(ids, 0, size, doc);
+            if (at < 0) {
+                return false;
+            }
+            System.arraycopy(ids, at + 1, ids, at, size - at - 1);
+            size--;
+            return true;
+        }
+
+        boolean contains(int doc) {
+            return Arrays.binarySearch(ids, 0, size, doc) >= 0;
+        }
+    }
+}
@@ -0,0 +1,699 @@
+package data;
+
+import model.*;
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * {@link Store} backed by an {@link OrderServer} on another machine (or on localhost).
+ * Every call is one request/response round trip over a single connection.
+ * Objects returned are copies; changes are sent to the server by id, so e.g.
+ * {@link #updateOrderStatus} only needs an order with the right id. Products are
+ * the exception: each one is kept as a single local copy, handed out again by later
+ * calls, refreshed when the server reports its stock changed, and used for the
+ * items of orders read from the server.
+ * <p>
+ * If the connection drops, the next call reconnects and logs in again as the user
+ * last authenticated. Stock reserved over the old connection has been released by
+ * the server by then.
+ * <p>
+ * Listeners are fed from a second connection that only carries the server's events.
+ */
+public class RemoteStore implements Store {
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+    private static final long RESUBSCRIBE_DELAY_MS = 2000;
+    private static final ExecutorService background = Executors.newVirtualThreadPerTaskExecutor();
+    private static RemoteStore instance;
+
+    private final String host;
+    private final int port;
+
+    // Guarded by lock. Not synchronized: a virtual thread blocked on the socket inside a
+    // monitor would pin its carrier thread, which can stall an in-process server.
+    private final ReentrantLock lock = new ReentrantLock();
+    private Socket socket;
+    private BufferedReader in;
+    private Writer out;
+    // The login the server knows this client by, replayed on every new connection
+    private String username;
+    private String password;
+
+    // The local copy of every product seen so far, by id
+    private final Map<String, Product> products = new ConcurrentHashMap<>();
+
+    private final ChangeBus changes = new ChangeBus();
+    // Guarded by lock
+    private Thread subscriber;
+    private Socket eventSocket;
+
+    public RemoteStore(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    /** Returns the shared client for "host:port" (or "host", using the default port). */
+    public static synchronized RemoteStore getInstance(String address) {
+        if (instance == null) {
+            int colon = address.lastIndexOf(':');
+            instance = colon < 0
+                    ? new RemoteStore(address, OrderServer.DEFAULT_PORT)
+                    : new RemoteStore(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+        }
+        return instance;
+    }
+
+    // ==================== Authentication ====================
+
+    public User authenticate(String username, String password) {
+        User user = readUser(call("authenticate", args(username, password)));
+        lock.lock();
+        try {
+            this.username = user == null ? null : username;
+            this.password = user == null ? null : password;
+        } finally {
+            lock.unlock();
+        }
+        return user;
+    }
+
+    // ==================== Products ====================
+
+    public List<Product> getProducts() {
+        return readProducts(call("getProducts", "[]"));
+    }
+
+    public List<Product> getProductsByCategory(Category category) {
+        return readProducts(call("getProductsByCategory", args(category.name())));
+    }
+
+    public List<Product> searchProducts(String keyword) {
+        return searchProducts(keyword, null);
+    }
+
+    public List<Product> searchProducts(String keyword, Category category) {
+        return readProducts(call("searchProducts",
+                category == null ? args(keyword) : args(keyword, category.name())));
+    }
+
+    public Product findProduct(String id) {
+        JsonReader reader = call("findProduct", args(id));
+        return read(reader, () -> reader.nextNull() ? null : remember(JsonHelper.readProduct(reader)));
+    }
+
+    public void addProduct(Product p) {
+        StringBuilder args = new StringBuilder("[");
+        JsonHelper.appendProductJson(args, p);
+        call("addProduct", args.append("]").toString());
+    }
+
+    public void removeProduct(Product p) {
+        call("removeProduct", args(p.getId()));
+    }
+
+    public void updateProduct(Product oldProduct, Product newProduct) {
+        StringBuilder args = new StringBuilder("[\"").append(JsonHelper.escapeJson(oldProduct.getId())).append("\",");
+        JsonHelper.appendProductJson(args, newProduct);
+        call("updateProduct", args.append("]").toString());
+    }
+
+    public boolean reserveStock(String holder, Product p, int quantity) {
+        JsonReader reader = call("reserveStock", stockArgs(holder, p, quantity));
+        boolean ok = read(reader, reader::nextBoolean);
+        if (ok) {
+            // Keep the local copy in step, so it shows the same available stock
+            p.getStockCounter().tryReserve(quantity);
+        }
+        return ok;
+    }
+
+    public void releaseStock(String holder, Product p, int quantity) {
+        call("releaseStock", stockArgs(holder, p, quantity));
+        if (p.getStockCounter().getReserved() >= quantity) {
+            p.getStockCounter().release(quantity);
+        }
+    }
+
+    public void releaseAllStock(String holder) {
+        call("releaseAllStock", args(holder));
+    }
+
+    // ==================== Orders ====================
+
+    public List<Order> getOrders() {
+        return readOrders(call("getOrders", "[]"));
+    }
+
+    public Order findOrder(String orderId) {
+        return readOrder(call("findOrder", args(orderId)));
+    }
+
+    public List<YearMonth> getArchivedMonths() {
+        JsonReader reader = call("getArchivedMonths", "[]");
+        return read(reader, () -> {
+            List<YearMonth> months = new ArrayList<>();
+            reader.beginArray();
+            while (reader.hasNext()) {
+                months.add(YearMonth.parse(reader.nextString()));
+            }
+            reader.endArray();
+            return months;
+        });
+    }
+
+    public List<Order> getArchivedOrders(YearMonth month) {
+        return readOrders(call("getArchivedOrders", args(month.toString())));
+    }
+
+    public List<Order> getOrdersByStatus(OrderStatus status) {
+        return readOrders(call("getOrdersByStatus", args(status.name())));
+    }
+
+    public int countOrdersByStatus(OrderStatus status) {
+        JsonReader reader = call("countOrdersByStatus", args(status.name()));
+        return read(reader, reader::nextInt);
+    }
+
+    public List<Order> getOrdersByBuyer(String buyerUsername) {
+        return readOrders(call("getOrdersByBuyer", args(buyerUsername)));
+    }
+
+    public OrderPage getOrderHistory(String buyerUsername, String cursor, int limit) {
+        String args = "[\"" + JsonHelper.escapeJson(buyerUsername) + "\"," +
+                (cursor == null ? "null" : "\"" + JsonHelper.escapeJson(cursor) + "\"") + "," + limit + "]";
+        JsonReader reader = call("getOrderHistory", args);
+        Map<String, Product> byId = knownProducts();
+        return read(reader, () -> {
+            List<Order> orders = new ArrayList<>();
+            String next = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "orders":
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            orders.add(JsonHelper.readOrder(reader, byId));
+                        }
+                        reader.endArray();
+                        break;
+                    case "next":
+                        next = reader.nextNull() ? null : reader.nextString();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return new OrderPage(orders, next);
+        });
+    }
+
+    public Order checkout(String buyerUsername, String roomName, List<CartItem> items) {
+        return readOrder(call("checkout", checkoutArgs(buyerUsername, roomName, items)));
+    }
+
+    public Order checkoutReserved(String holder, String buyerUsername, String roomName, List<CartItem> items) {
+        String args = "[\"" + JsonHelper.escapeJson(holder) + "\"," + checkoutArgs(buyerUsername, roomName, items).substring(1);
+        return readOrder(call("checkoutReserved", args));
+    }
+
+    public void addOrder(Order o) {
+        StringBuilder args = new StringBuilder("[");
+        JsonHelper.appendOrderJson(args, o);
+        call("addOrder", args.append("]").toString());
+    }
+
+    public void updateOrderStatus(Order o, OrderStatus status) {
+        call("updateOrderStatus", args(o.getOrderId(), status.name()));
+        o.setStatus(status);
+    }
+
+    // ==================== Users ====================
+
+    public List<User> getUsers() {
+        JsonReader reader = call("getUsers", "[]");
+        return read(reader, () -> {
+            List<User> users = new ArrayList<>();
+            reader.beginArray();
+            while (reader.hasNext()) {
+                users.add(JsonHelper.readUser(reader));
+            }
+            reader.endArray();
+            return users;
+        });
+    }
+
+    public User findUser(String username) {
+        return readUser(call("findUser", args(username)));
+    }
+
+    public void addUser(User u) {
+        StringBuilder args = new StringBuilder("[");
+        JsonHelper.appendUserJson(args, u, true);
+        call("addUser", args.append("]").toString());
+    }
+
+    public void removeUser(User u) {
+        call("removeUser", args(u.getUsername()));
+    }
+
+    public void updateUser(User oldUser, User newUser) {
+        StringBuilder args = new StringBuilder("[\"").append(JsonHelper.escapeJson(oldUser.getUsername()))
+                .append("\",");
+        JsonHelper.appendUserJson(args, newUser, true);
+        call("updateUser", args.append("]").toString());
+    }
+
+    public boolean usernameExists(String username) {
+        JsonReader reader = call("usernameExists", args(username));
+        return read(reader, reader::nextBoolean);
+    }
+
+    // ==================== Statistics ====================
+
+    public double getTotalSales() {
+        JsonReader reader = call("getTotalSales", "[]");
+        return read(reader, reader::nextDouble);
+    }
+
+    public int getTotalOrdersDelivered() {
+        JsonReader reader = call("getTotalOrdersDelivered", "[]");
+        return read(reader, reader::nextInt);
+    }
+
+    public int getPendingOrdersCount() {
+        JsonReader reader = call("getPendingOrdersCount", "[]");
+        return read(reader, reader::nextInt);
+    }
+
+    public List<SalesRollup.Point> getSalesSeries(SalesRollup.Granularity granularity, long from, long to,
+            Category category) {
+        JsonReader reader = call("getSalesSeries", "[\"" + granularity.name() + "\"," + from + "," + to + "," +
+                (category == null ? "null" : "\"" + category.name() + "\"") + "]");
+        return read(reader, () -> {
+            List<SalesRollup.Point> points = new ArrayList<>();
+            reader.beginArray();
+            while (reader.hasNext()) {
+                SalesRow row = readSalesRow(reader);
+                points.add(new SalesRollup.Point(row.start, row.totals));
+            }
+            reader.endArray();
+            return points;
+        });
+    }
+
+    public Map<String, SalesRollup.Totals> getProductSales(SalesRollup.Granularity granularity, long from, long to) {
+        JsonReader reader = call("getProductSales", "[\"" + granularity.name() + "\"," + from + "," + to + "]");
+        return read(reader, () -> {
+            Map<String, SalesRollup.Totals> sales = new LinkedHashMap<>();
+            reader.beginArray();
+            while (reader.hasNext()) {
+                SalesRow row = readSalesRow(reader);
+                sales.put(row.name, row.totals);
+            }
+            reader.endArray();
+            return sales;
+        });
+    }
+
+    // ==================== Lifecycle ====================
+
+    /** Asks the server to flush; completes once it reports the data is on disk. */
+    public CompletableFuture<Void> requestFlush() {
+        return CompletableFuture.runAsync(() -> call("requestFlush", "[]"), background);
+    }
+
+    public void close() {
+        lock.lock();
+        try {
+            disconnect();
+            stopSubscriber();
+        } finally {
+            lock.unlock();
+        }
+        changes.close();
+    }
+
+    // ==================== Change Events ====================
+
+    /** Subscribes to the server's events when the first listener is added. */
+    public void addListener(StoreListener listener) {
+        changes.addListener(listener);
+        lock.lock();
+        try {
+            if (subscriber == null) {
+                subscriber = Thread.ofVirtual().name("order-server-events").start(this::receiveEvents);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Drops the event connection once the last listener is gone. */
+    public void removeListener(StoreListener listener) {
+        changes.removeListener(listener);
+        lock.lock();
+        try {
+            if (!changes.hasListeners()) {
+                stopSubscriber();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Caller holds the lock. */
+    private void stopSubscriber() {
+        if (subscriber != null) {
+            subscriber.interrupt();
+            subscriber = null;
+        }
+        if (eventSocket != null) {
+            try {
+                eventSocket.close();
+            } catch (IOException e) {
+                // Nothing left to clean up
+            }
+            eventSocket = null;
+        }
+    }
+
+    /** Relays events from the server to the local listeners, reconnecting if the connection drops. */
+    private void receiveEvents() {
+        Thread self = Thread.currentThread();
+        while (!self.isInterrupted()) {
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MS);
+                lock.lock();
+                try {
+                    if (subscriber != self) {
+                        return;
+                    }
+                    eventSocket = socket;
+                } finally {
+                    lock.unlock();
+                }
+                BufferedReader events = new BufferedReader(
+                        new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                Writer request = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+                login(events, request);
+                request.write("{\"op\":\"subscribe\",\"args\":[]}\n");
+                request.flush();
+                String subscribed = events.readLine();
+                if (subscribed == null || !subscribed.startsWith("{\"result\"")) {
+                    throw new IOException("Server refused the event stream: " + subscribed);
+                }
+                String line;
+                while ((line = events.readLine()) != null) {
+                    publish(line);
+                }
+            } catch (IOException e) {
+                if (!self.isInterrupted()) {
+                    System.err.println("Lost order server events: " + e.getMessage());
+                }
+            }
+            try {
+                Thread.sleep(RESUBSCRIBE_DELAY_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void publish(String line) throws IOException {
+        JsonReader reader = new JsonReader(new StringReader(line));
+        StoreEvent.Type type = null;
+        String id = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "event":
+                    String name = reader.nextString();
+                    for (StoreEvent.Type t : StoreEvent.Type.values()) {
+                        if (t.name().equals(name)) {
+                            type = t;
+                        }
+                    }
+                    break;
+                case "id":
+                    id = reader.nextString();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        // Skip events this client does not know about
+        if (type == null) {
+            return;
+        }
+        if ((type == StoreEvent.Type.STOCK_CHANGED || type == StoreEvent.Type.PRODUCT_CHANGED)
+                && products.containsKey(id)) {
+            // Bring the local copy up to date before the listeners look at it
+            try {
+                findProduct(id);
+            } catch (RuntimeException e) {
+                System.err.println("Could not refresh product " + id + ": " + e.getMessage());
+            }
+        }
+        changes.publish(type, id);
+    }
+
+    // ==================== Protocol ====================
+
+    /**
+     * Sends one request and returns a reader positioned at the result value.
+     * Errors reported by the server are rethrown with the same exception type.
+     */
+    private JsonReader call(String op, String argsJson) {
+        String response;
+        lock.lock();
+        try {
+            if (socket == null) {
+                connect();
+            }
+            out.write("{\"op\":\"" + op + "\",\"args\":" + argsJson + "}\n");
+            out.flush();
+            response = in.readLine();
+            if (response == null) {
+                throw new EOFException("Server closed the connection");
+            }
+        } catch (IOException e) {
+            disconnect();
+            throw new UncheckedIOException("Order server " + host + ":" + port + " is not reachable", e);
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            JsonReader reader = new JsonReader(new StringReader(response));
+            reader.beginObject();
+            String name = reader.nextName();
+            if (name.equals("result")) {
+                return reader;
+            }
+            String type = reader.nextString();
+            String message = null;
+            if (reader.hasNext() && reader.nextName().equals("message")) {
+                message = reader.nextString();
+            }
+            switch (type) {
+                case "IllegalStateException":
+                    throw new IllegalStateException(message);
+                case "IllegalArgumentException":
+                    throw new IllegalArgumentException(message);
+                default:
+                    throw new RuntimeException("Order server error: " + message);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unreadable response from order server", e);
+        }
+    }
+
+    private void connect() throws IOException {
+        socket = new Socket();
+        socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MS);
+        socket.setTcpNoDelay(true);
+        in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+        login(in, out);
+    }
+
+    /** Logs a new connection in as the last authenticated user, if there is one. */
+    private void login(BufferedReader reader, Writer writer) throws IOException {
+        String user;
+        String secret;
+        lock.lock();
+        try {
+            user = username;
+            secret = password;
+        } finally {
+            lock.unlock();
+        }
+        if (user == null) {
+            return;
+        }
+        writer.write("{\"op\":\"authenticate\",\"args\":" + args(user, secret) + "}\n");
+        writer.flush();
+        String response = reader.readLine();
+        if (response == null || response.startsWith("{\"result\":null")) {
+            throw new IOException("Server no longer accepts the login for " + user);
+        }
+    }
+
+    private void disconnect() {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Nothing left to clean up
+            }
+            socket = null;
+            in = null;
+            out = null;
+        }
+    }
+
+    private static String args(String... values) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0)
+                json.append(",");
+            json.append("\"").append(JsonHelper.escapeJson(values[i])).append("\"");
+        }
+        return json.append("]").toString();
+    }
+
+    private static String stockArgs(String holder, Product p, int quantity) {
+        return "[\"" + JsonHelper.escapeJson(holder) + "\",\"" + JsonHelper.escapeJson(p.getId()) + "\"," + quantity + "]";
+    }
+
+    private static String checkoutArgs(String buyerUsername, String roomName, List<CartItem> items) {
+        StringBuilder json = new StringBuilder("[\"").append(JsonHelper.escapeJson(buyerUsername))
+                .append("\",\"").append(JsonHelper.escapeJson(roomName)).append("\",[");
+        for (int i = 0; i < items.size(); i++) {
+            if (i > 0)
+                json.append(",");
+            json.append("{\"productId\":\"").append(JsonHelper.escapeJson(items.get(i).getProduct().getId()))
+                    .append("\",\"quantity\":").append(items.get(i).getQuantity()).append("}");
+        }
+        return json.append("]]").toString();
+    }
+
+    // ==================== Results ====================
+
+    /** Reads one value from a response, turning parse errors into unchecked ones. */
+    private interface ValueReader<T> {
+        T read() throws IOException;
+    }
+
+    private static <T> T read(JsonReader reader, ValueReader<T> value) {
+        try {
+            return value.read();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unreadable response from order server", e);
+        }
+    }
+
+    private List<Product> readProducts(JsonReader reader) {
+        return read(reader, () -> {
+            List<Product> list = new ArrayList<>();
+            reader.beginArray();
+            while (reader.hasNext()) {
+                list.add(remember(JsonHelper.readProduct(reader)));
+            }
+            reader.endArray();
+            return list;
+        });
+    }
+
+    /** Returns the local copy of the product, brought up to date with the one just read. */
+    private Product remember(Product fresh) {
+        Product known = products.putIfAbsent(fresh.getId(), fresh);
+        if (known == null) {
+            return fresh;
+        }
+        known.setName(fresh.getName());
+        known.setPrice(fresh.getPrice());
+        known.setDescription(fresh.getDescription());
+        known.setCategory(fresh.getCategory());
+        known.getStockCounter().copyFrom(fresh.getStockCounter());
+        return known;
+    }
+
+    /** Local product copies for resolving order items, fetched once if there are none yet. */
+    private Map<String, Product> knownProducts() {
+        if (products.isEmpty()) {
+            getProducts();
+        }
+        return products;
+    }
+
+    private Order readOrder(JsonReader reader) {
+        Map<String, Product> byId = knownProducts();
+        return read(reader, () -> reader.nextNull() ? null : JsonHelper.readOrder(reader, byId));
+    }
+
+    private List<Order> readOrders(JsonReader reader) {
+        Map<String, Product> byId = knownProducts();
+        return read(reader, () -> {
+            List<Order> orders = new ArrayList<>();
+            reader.beginArray();
+            while (reader.hasNext()) {
+                orders.add(JsonHelper.readOrder(reader, byId));
+            }
+            reader.endArray();
+            return orders;
+        });
+    }
+
+    /** One entry of a sales series or product ranking. */
+    private static class SalesRow {
+        long start;
+        String name;
+        SalesRollup.Totals totals;
+    }
+
+    private static SalesRow readSalesRow(JsonReader reader) throws IOException {
+        SalesRow row = new SalesRow();
+        double revenue = 0;
+        long orders = 0;
+        long units = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "start":
+                    row.start = reader.nextLong();
+                    break;
+                case "name":
+                    row.name = reader.nextString();
+                    break;
+                case "revenue":
+                    revenue = reader.nextDouble();
+                    break;
+                case "orders":
+                    orders = reader.nextLong();
+                    break;
+                case "units":
+                    units = reader.nextLong();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        row.totals = new SalesRollup.Totals(revenue, orders, units);
+        return row;
+    }
+
+    private static User readUser(JsonReader reader) {
+        return read(reader, () -> reader.nextNull() ? null : JsonHelper.readUser(reader));
+    }
+}
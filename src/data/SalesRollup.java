@@ -0,0 +1,296 @@
+package data;
+
+import model.CartItem;
+import model.Category;
+import model.Order;
+import model.OrderStatus;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Delivered sales pre-aggregated into hourly, daily and monthly buckets, in total,
+ * per category and per product. Orders count in the bucket they were placed in.
+ * Kept up to date as orders are delivered or leave DELIVERED, so a chart over a
+ * range reads one bucket per point instead of scanning every order.
+ * <p>
+ * Not thread-safe: the store guards it with its own lock.
+ */
+public class SalesRollup {
+
+    public enum Granularity {
+        HOUR, DAY, MONTH;
+
+        /** Start of the bucket holding the given time, in the system zone. */
+        public long bucketStart(long time) {
+            ZonedDateTime t = Instant.ofEpochMilli(time).atZone(ZoneId.systemDefault());
+            switch (this) {
+                case HOUR:
+                    t = t.truncatedTo(ChronoUnit.HOURS);
+                    break;
+                case DAY:
+                    t = t.toLocalDate().atStartOfDay(t.getZone());
+                    break;
+                default:
+                    t = t.toLocalDate().withDayOfMonth(1).atStartOfDay(t.getZone());
+            }
+            return t.toInstant().toEpochMilli();
+        }
+
+        /** Start of the bucket after the one starting at the given time. */
+        public long nextStart(long start) {
+            ZonedDateTime t = Instant.ofEpochMilli(start).atZone(ZoneId.systemDefault());
+            switch (this) {
+                case HOUR:
+                    t = t.plusHours(1);
+                    break;
+                case DAY:
+                    t = t.plusDays(1);
+                    break;
+                default:
+                    t = t.plusMonths(1);
+            }
+            return bucketStart(t.toInstant().toEpochMilli());
+        }
+    }
+
+    /** Revenue, order count and units sold. */
+    public static class Totals {
+        private double revenue;
+        private long orders;
+        private long units;
+
+        public Totals() {
+        }
+
+        public Totals(double revenue, long orders, long units) {
+            this.revenue = revenue;
+            this.orders = orders;
+            this.units = units;
+        }
+
+        public double getRevenue() {
+            return revenue;
+        }
+
+        public long getOrders() {
+            return orders;
+        }
+
+        public long getUnits() {
+            return units;
+        }
+
+        public void addAll(Totals other) {
+            add(other.revenue, other.orders, other.units);
+        }
+
+        void add(double revenue, long orders, long units) {
+            this.revenue += revenue;
+            this.orders += orders;
+            this.units += units;
+        }
+
+        boolean isEmpty() {
+            return orders == 0;
+        }
+    }
+
+    /** One bucket of a series: its start in epoch millis and what was sold in it. */
+    public static class Point {
+        private final long start;
+        private final Totals totals;
+
+        public Point(long start, Totals totals) {
+            this.start = start;
+            this.totals = totals;
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        public Totals getTotals() {
+            return totals;
+        }
+    }
+
+    private static class Bucket {
+        final Totals total = new Totals();
+        final Map<Category, Totals> byCategory = new EnumMap<>(Category.class);
+        // By product id; names are kept apart so a renamed product stays one line
+        final Map<String, Totals> byProduct = new HashMap<>();
+    }
+
+    private final Map<Granularity, TreeMap<Long, Bucket>> buckets = new EnumMap<>(Granularity.class);
+    private final Map<String, String> productNames = new HashMap<>();
+
+    public SalesRollup() {
+        for (Granularity g : Granularity.values()) {
+            buckets.put(g, new TreeMap<>());
+        }
+    }
+
+    /** Builds a rollup of the delivered orders among the given ones. */
+    public static SalesRollup of(Collection<Order> orders) {
+        SalesRollup rollup = new SalesRollup();
+        for (Order o : orders) {
+            rollup.add(o);
+        }
+        return rollup;
+    }
+
+    // ==================== Updates ====================
+
+    public void clear() {
+        for (TreeMap<Long, Bucket> map : buckets.values()) {
+            map.clear();
+        }
+        productNames.clear();
+    }
+
+    /** Counts an order if it is delivered. */
+    public void add(Order o) {
+        if (o.getStatus() == OrderStatus.DELIVERED) {
+            apply(o, 1);
+        }
+    }
+
+    /** Takes back what {@link #add} counted for the order. */
+    public void remove(Order o) {
+        if (o.getStatus() == OrderStatus.DELIVERED) {
+            apply(o, -1);
+        }
+    }
+
+    /** Follows an order into or out of DELIVERED. */
+    public void statusChanged(Order o, OrderStatus from, OrderStatus to) {
+        if (from != to && (from == OrderStatus.DELIVERED || to == OrderStatus.DELIVERED)) {
+            apply(o, to == OrderStatus.DELIVERED ? 1 : -1);
+        }
+    }
+
+    private void apply(Order o, int sign) {
+        for (Granularity g : Granularity.values()) {
+            TreeMap<Long, Bucket> map = buckets.get(g);
+            long start = g.bucketStart(o.getCreatedTime());
+            Bucket b = map.computeIfAbsent(start, s -> new Bucket());
+            addTo(b, o, sign);
+            if (b.total.isEmpty()) {
+                map.remove(start);
+            }
+        }
+    }
+
+    private void addTo(Bucket b, Order o, int sign) {
+        long units = 0;
+        Set<Category> categories = new HashSet<>();
+        Set<String> products = new HashSet<>();
+        for (CartItem item : o.getItems()) {
+            // Filed under what the line recorded, so taking an order back hits the same
+            // entries even after the product was edited
+            String id = item.getProductId();
+            Category category = item.getCategory();
+            // An order counts once per category and product, however many lines it has
+            long orders = categories.add(category) ? sign : 0;
+            b.byCategory.computeIfAbsent(category, c -> new Totals())
+                    .add(sign * item.getTotal(), orders, sign * item.getQuantity());
+            b.byProduct.computeIfAbsent(id, p -> new Totals())
+                    .add(sign * item.getTotal(), products.add(id) ? sign : 0, sign * item.getQuantity());
+            if (sign > 0) {
+                productNames.put(id, item.getProduct().getName());
+            }
+            units += item.getQuantity();
+        }
+        b.total.add(sign * o.getTotalAmount(), sign, sign * units);
+        b.byCategory.values().removeIf(Totals::isEmpty);
+        b.byProduct.values().removeIf(Totals::isEmpty);
+    }
+
+    // ==================== Queries ====================
+
+    /**
+     * Sales per bucket from the bucket holding {@code from} up to {@code to} (exclusive),
+     * one point per bucket including empty ones.
+     *
+     * @param category null for all categories
+     */
+    public List<Point> series(Granularity g, long from, long to, Category category) {
+        List<Point> points = new ArrayList<>();
+        TreeMap<Long, Bucket> map = buckets.get(g);
+        for (long start = g.bucketStart(from); start < to; start = g.nextStart(start)) {
+            Bucket b = map.get(start);
+            Totals totals = new Totals();
+            if (b != null) {
+                totals.addAll(category == null ? b.total : b.byCategory.getOrDefault(category, new Totals()));
+            }
+            points.add(new Point(start, totals));
+        }
+        return points;
+    }
+
+    /**
+     * Sales per product name over the buckets from the one holding {@code from} up to
+     * {@code to} (exclusive), best selling first.
+     */
+    public Map<String, Totals> byProduct(Granularity g, long from, long to) {
+        Map<String, Totals> byId = new HashMap<>();
+        long start = g.bucketStart(from);
+        if (start >= to) {
+            return byId;
+        }
+        for (Bucket b : buckets.get(g).subMap(start, true, to, false).values()) {
+            for (Map.Entry<String, Totals> entry : b.byProduct.entrySet()) {
+                byId.computeIfAbsent(entry.getKey(), id -> new Totals()).addAll(entry.getValue());
+            }
+        }
+        Map<String, Totals> byName = new HashMap<>();
+        for (Map.Entry<String, Totals> entry : byId.entrySet()) {
+            String name = productNames.getOrDefault(entry.getKey(), entry.getKey());
+            byName.computeIfAbsent(name, n -> new Totals()).addAll(entry.getValue());
+        }
+        return sortedByRevenue(byName);
+    }
+
+    // ==================== Merging ====================
+
+    /** Adds another series point by point; both must cover the same buckets. */
+    static void addSeries(List<Point> into, List<Point> other) {
+        for (int i = 0; i < into.size(); i++) {
+            into.get(i).getTotals().addAll(other.get(i).getTotals());
+        }
+    }
+
+    /** Merges per-product totals, keeping the result best selling first. */
+    static Map<String, Totals> mergeProducts(List<Map<String, Totals>> parts) {
+        Map<String, Totals> merged = new HashMap<>();
+        for (Map<String, Totals> part : parts) {
+            for (Map.Entry<String, Totals> entry : part.entrySet()) {
+                merged.computeIfAbsent(entry.getKey(), n -> new Totals()).addAll(entry.getValue());
+            }
+        }
+        return sortedByRevenue(merged);
+    }
+
+    private static Map<String, Totals> sortedByRevenue(Map<String, Totals> totals) {
+        List<Map.Entry<String, Totals>> entries = new ArrayList<>(totals.entrySet());
+        entries.sort((a, b) -> Double.compare(b.getValue().getRevenue(), a.getValue().getRevenue()));
+        Map<String, Totals> sorted = new LinkedHashMap<>();
+        for (Map.Entry<String, Totals> entry : entries) {
+            sorted.put(entry.getKey(), entry.getValue());
+        }
+        return sorted;
+    }
+}
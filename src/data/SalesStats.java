@@ -0,0 +1,59 @@
+package data;
+
+import model.Order;
+import model.OrderStatus;
+
+/**
+ * Running order counts and amounts per status.
+ * Updated as orders are added or change status, so reading a total is O(1)
+ * instead of a scan over every order.
+ */
+public class SalesStats {
+    private final long[] counts = new long[OrderStatus.values().length];
+    private final double[] amounts = new double[OrderStatus.values().length];
+
+    public void add(Order o) {
+        add(o.getStatus(), 1, o.getTotalAmount());
+    }
+
+    public void remove(Order o) {
+        add(o.getStatus(), -1, -o.getTotalAmount());
+    }
+
+    /** Moves an order's contribution from one status to another, e.g. out of DELIVERED into CANCELLED. */
+    public void statusChanged(Order o, OrderStatus from, OrderStatus to) {
+        if (from != to) {
+            add(from, -1, -o.getTotalAmount());
+            add(to, 1, o.getTotalAmount());
+        }
+    }
+
+    public void add(OrderStatus status, long count, double amount) {
+        counts[status.ordinal()] += count;
+        amounts[status.ordinal()] += amount;
+    }
+
+    public void addAll(SalesStats other) {
+        for (OrderStatus status : OrderStatus.values()) {
+            add(status, other.getCount(status), other.getAmount(status));
+        }
+    }
+
+    public void clear() {
+        java.util.Arrays.fill(counts, 0);
+        java.util.Arrays.fill(amounts, 0);
+    }
+
+    public long getCount(OrderStatus status) {
+        return counts[status.ordinal()];
+    }
+
+    public double getAmount(OrderStatus status) {
+        return amounts[status.ordinal()];
+    }
+
+    /** Revenue from delivered orders. */
+    public double getTotalSales() {
+        return getAmount(OrderStatus.DELIVERED);
+    }
+}
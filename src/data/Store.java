@@ -0,0 +1,134 @@
+package data;
+
+import model.*;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The store operations the dashboards use.
+ * Implemented locally by {@link DataStore}, and by {@link RemoteStore} when the
+ * application talks to a shared {@link OrderServer}.
+ */
+public interface Store {
+
+    /**
+     * Returns the store this process works against: a {@link RemoteStore} when started
+     * with -Dcafe.server=host:port, otherwise the local {@link DataStore}.
+     */
+    static Store getInstance() {
+        String server = System.getProperty("cafe.server");
+        return server == null ? DataStore.getInstance() : RemoteStore.getInstance(server);
+    }
+
+    // ==================== Authentication ====================
+
+    User authenticate(String username, String password);
+
+    // ==================== Products ====================
+
+    List<Product> getProducts();
+
+    List<Product> getProductsByCategory(Category category);
+
+    List<Product> searchProducts(String keyword);
+
+    /** @param category only products in this category, or null for all */
+    List<Product> searchProducts(String keyword, Category category);
+
+    Product findProduct(String id);
+
+    void addProduct(Product p);
+
+    void removeProduct(Product p);
+
+    void updateProduct(Product oldProduct, Product newProduct);
+
+    /**
+     * Holds stock for a cart until it is checked out or released.
+     * @param holder identifies the cart; only it can release or check out the stock
+     */
+    boolean reserveStock(String holder, Product p, int quantity);
+
+    void releaseStock(String holder, Product p, int quantity);
+
+    /** Gives back everything the holder still has reserved. */
+    void releaseAllStock(String holder);
+
+    // ==================== Orders ====================
+
+    List<Order> getOrders();
+
+    Order findOrder(String orderId);
+
+    List<YearMonth> getArchivedMonths();
+
+    List<Order> getArchivedOrders(YearMonth month);
+
+    List<Order> getOrdersByStatus(OrderStatus status);
+
+    int countOrdersByStatus(OrderStatus status);
+
+    List<Order> getOrdersByBuyer(String buyerUsername);
+
+    /**
+     * A page of the buyer's orders, hot and archived, newest first.
+     * @param cursor null for the newest page, else the previous page's next cursor
+     */
+    OrderPage getOrderHistory(String buyerUsername, String cursor, int limit);
+
+    Order checkout(String buyerUsername, String roomName, List<CartItem> items);
+
+    Order checkoutReserved(String holder, String buyerUsername, String roomName, List<CartItem> items);
+
+    void addOrder(Order o);
+
+    void updateOrderStatus(Order o, OrderStatus status);
+
+    // ==================== Users ====================
+
+    List<User> getUsers();
+
+    User findUser(String username);
+
+    void addUser(User u);
+
+    void removeUser(User u);
+
+    void updateUser(User oldUser, User newUser);
+
+    boolean usernameExists(String username);
+
+    // ==================== Statistics ====================
+
+    double getTotalSales();
+
+    int getTotalOrdersDelivered();
+
+    int getPendingOrdersCount();
+
+    /**
+     * Delivered sales per bucket over [from, to), one point per bucket.
+     * @param category null for all categories
+     */
+    List<SalesRollup.Point> getSalesSeries(SalesRollup.Granularity granularity, long from, long to,
+            Category category);
+
+    /** Delivered sales per product name over [from, to), best selling first. */
+    Map<String, SalesRollup.Totals> getProductSales(SalesRollup.Granularity granularity, long from, long to);
+
+    // ==================== Change Events ====================
+
+    /** Starts delivering changes to the listener, e.g. to refresh a screen without polling. */
+    void addListener(StoreListener listener);
+
+    void removeListener(StoreListener listener);
+
+    // ==================== Lifecycle ====================
+
+    /** Completes once everything changed so far is on disk. */
+    CompletableFuture<Void> requestFlush();
+
+    void close();
+}
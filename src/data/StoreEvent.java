@@ -0,0 +1,45 @@
+package data;
+
+/**
+ * A change to the store, delivered to {@link StoreListener}s.
+ * Carries only the kind of change and the id of what changed; listeners look up
+ * the current state themselves, so a burst of events can be handled as one.
+ */
+public class StoreEvent {
+
+    public enum Type {
+        ORDER_ADDED,
+        ORDER_STATUS_CHANGED,
+        // Completed orders moved out of the hot set into the archive
+        ORDER_ARCHIVED,
+        STOCK_CHANGED,
+        PRODUCT_CHANGED,
+        USER_CHANGED
+    }
+
+    private final Type type;
+    private final String id;
+
+    public StoreEvent(Type type, String id) {
+        this.type = type;
+        this.id = id;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /** Order id, product id or username, depending on the type. */
+    public String getId() {
+        return id;
+    }
+
+    public boolean isOrderEvent() {
+        return type == Type.ORDER_ADDED || type == Type.ORDER_STATUS_CHANGED || type == Type.ORDER_ARCHIVED;
+    }
+
+    @Override
+    public String toString() {
+        return type + " " + id;
+    }
+}
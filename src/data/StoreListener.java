@@ -0,0 +1,9 @@
+package data;
+
+/**
+ * Receives {@link StoreEvent}s. Called on the store's event thread, one event at a
+ * time and in the order the changes were made; UI code has to hop onto its own thread.
+ */
+public interface StoreListener {
+    void storeChanged(StoreEvent event);
+}
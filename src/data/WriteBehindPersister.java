@@ -0,0 +1,121 @@
+package data;
+
+import java.util.concurrent.*;
+
+/**
+ * Runs a flush action on a single background thread, coalescing bursts of changes.
+ * Callers mark state dirty; the flush runs after a fixed interval, or immediately once
+ * enough changes have piled up, so many mutations end up sharing one write.
+ * <p>
+ * This also gives group commit for durable writes: callers that request a flush while
+ * one is already running all wait on the next flush, and share its single fsync.
+ */
+public class WriteBehindPersister implements AutoCloseable {
+    private final Runnable flushAction;
+    private final long intervalMillis;
+    private final int maxPendingChanges;
+    private final ScheduledExecutorService executor;
+
+    // Guarded by this
+    private int pendingChanges;
+    private ScheduledFuture<?> scheduled;
+    private CompletableFuture<Void> nextFlush = new CompletableFuture<>();
+    private boolean closed;
+
+    /**
+     * @param flushAction       writes everything that is dirty; throws to signal failure
+     * @param intervalMillis    how long changes may wait before being written
+     * @param maxPendingChanges number of changes that triggers an immediate flush
+     */
+    public WriteBehindPersister(Runnable flushAction, long intervalMillis, int maxPendingChanges) {
+        this.flushAction = flushAction;
+        this.intervalMillis = intervalMillis;
+        this.maxPendingChanges = maxPendingChanges;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "data-persister");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Records a change and makes sure a flush is scheduled.
+     *
+     * @return a future that completes once the change has been written
+     */
+    public synchronized CompletableFuture<Void> markDirty() {
+        pendingChanges++;
+        schedule(pendingChanges >= maxPendingChanges ? 0 : intervalMillis);
+        return nextFlush;
+    }
+
+    /**
+     * Asks for a flush as soon as possible.
+     *
+     * @return a future that completes once everything changed so far has been written
+     */
+    public synchronized CompletableFuture<Void> requestFlush() {
+        schedule(0);
+        return nextFlush;
+    }
+
+    /** Writes all pending changes and waits until they are on disk. */
+    public void flush() {
+        requestFlush().join();
+    }
+
+    @Override
+    public void close() {
+        try {
+            flush();
+        } catch (CompletionException e) {
+            System.err.println("Final flush failed: " + e.getCause().getMessage());
+        }
+        synchronized (this) {
+            closed = true;
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void schedule(long delayMillis) {
+        if (closed) {
+            throw new IllegalStateException("Persister is closed");
+        }
+        if (scheduled != null && !scheduled.isDone()) {
+            if (scheduled.getDelay(TimeUnit.MILLISECONDS) <= delayMillis) {
+                return; // The pending flush already fires soon enough
+            }
+            scheduled.cancel(false);
+        }
+        scheduled = executor.schedule(this::runFlush, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void runFlush() {
+        CompletableFuture<Void> done;
+        synchronized (this) {
+            // Changes made from here on need a flush of their own
+            scheduled = null;
+            pendingChanges = 0;
+            done = nextFlush;
+            nextFlush = new CompletableFuture<>();
+        }
+        try {
+            flushAction.run();
+            done.complete(null);
+        } catch (RuntimeException e) {
+            System.err.println("Background save failed: " + e.getMessage());
+            done.completeExceptionally(e);
+            // Try again later; the flush action keeps its data dirty on failure
+            synchronized (this) {
+                if (!closed) {
+                    schedule(intervalMillis);
+                }
+            }
+        }
+    }
+}
@@ -6,10 +6,25 @@ public class CartItem implements Serializable {
     private static final long serialVersionUID = 1L;
     private Product product;
     private int quantity;
+    // Price per unit when the line was created, so saved orders keep what they cost
+    private double unitPrice;
+    // The product's id and category at that time, which sales figures are filed under
+    private final String productId;
+    private final Category category;
 
     public CartItem(Product product, int quantity) {
+        this(product, quantity, product.getPrice());
+    }
+
+    /**
+     * Restores a line of a saved order at the price it was sold for.
+     */
+    public CartItem(Product product, int quantity, double unitPrice) {
         this.product = product;
         this.quantity = quantity;
+        this.unitPrice = unitPrice;
+        this.productId = product.getId();
+        this.category = product.getCategory();
     }
 
     public Product getProduct() {
@@ -20,8 +35,22 @@ public class CartItem implements Serializable {
         return quantity;
     }
 
+    public double getUnitPrice() {
+        return unitPrice;
+    }
+
+    /** Id of the product when the line was created, even if it was edited since. */
+    public String getProductId() {
+        return productId;
+    }
+
+    /** Category of the product when the line was created, even if it was edited since. */
+    public Category getCategory() {
+        return category;
+    }
+
     public double getTotal() {
-        return product.getPrice() * quantity;
+        return unitPrice * quantity;
     }
 
     public void setQuantity(int q) {
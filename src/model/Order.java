@@ -2,7 +2,6 @@ package model;
 
 import java.io.Serializable;
 import java.util.List;
-import java.util.UUID;
 
 public class Order implements Serializable {
     private static final long serialVersionUID = 1L;
@@ -11,11 +10,11 @@ public class Order implements Serializable {
     private String roomName;
     private List<CartItem> items;
     private double totalAmount;
-    private OrderStatus status;
+    private volatile OrderStatus status;
     private long createdTime;
 
     public Order(String buyerUsername, String roomName, List<CartItem> items) {
-        this.orderId = UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+        this.orderId = OrderIdGenerator.next();
         this.buyerUsername = buyerUsername;
         this.roomName = roomName;
         this.items = items;
@@ -24,6 +23,20 @@ public class Order implements Serializable {
         calculateTotal();
     }
 
+    /**
+     * Restores a previously saved order, keeping its original id, status and timestamp.
+     */
+    public Order(String orderId, String buyerUsername, String roomName, List<CartItem> items,
+            OrderStatus status, long createdTime) {
+        this.orderId = orderId;
+        this.buyerUsername = buyerUsername;
+        this.roomName = roomName;
+        this.items = items;
+        this.status = status;
+        this.createdTime = createdTime;
+        calculateTotal();
+    }
+
     private void calculateTotal() {
         this.totalAmount = items.stream().mapToDouble(CartItem::getTotal).sum();
     }
@@ -0,0 +1,102 @@
+package model;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free generator of unique order ids that sort by the time they were made.
+ * An id is 64 bits: the time in epoch millis (42 bits), a counter within that
+ * millisecond (12 bits) and the id of the node that made it (10 bits), written as
+ * 13 characters of Crockford base 32, so comparing ids as strings compares them in
+ * time order.
+ * <p>
+ * Time and counter are one value advanced with compare-and-set: every id is larger
+ * than the one before it, even if the clock steps back or more than 4096 ids are
+ * asked for in one millisecond (the counter then runs ahead into the next one).
+ * <p>
+ * Processes that write to the same data need different node ids. The store claims
+ * one on startup with a lock file in its data directory, so processes sharing the
+ * data never hold the same id at once; {@code -Dcafe.nodeId} (0-1023) picks which
+ * one to claim. Ids cannot be made before a node id is set.
+ */
+public final class OrderIdGenerator {
+    private static final int NODE_BITS = 10;
+    private static final int COUNTER_BITS = 12;
+    public static final int MAX_NODE = (1 << NODE_BITS) - 1;
+    private static final int LENGTH = 13;
+    private static final char[] DIGITS = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+
+    // Set once per process by the store; -1 until then
+    private static volatile long node = -1;
+
+    // Last (time << COUNTER_BITS | counter) handed out
+    private static final AtomicLong last = new AtomicLong();
+
+    private OrderIdGenerator() {
+    }
+
+    /** Returns a new id, larger than every id this process made before. */
+    public static String next() {
+        return encode(nextValue());
+    }
+
+    /**
+     * The node id requested with -Dcafe.nodeId, or -1 if none was.
+     *
+     * @throws IllegalArgumentException if the property is not a number in 0-1023
+     */
+    public static int configuredNode() {
+        String configured = System.getProperty("cafe.nodeId");
+        if (configured == null) {
+            return -1;
+        }
+        try {
+            int id = Integer.parseInt(configured.trim());
+            if (id >= 0 && id <= MAX_NODE) {
+                return id;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("cafe.nodeId=" + configured + " is not a node id, expected 0-" + MAX_NODE);
+    }
+
+    /** Sets this process's node id; the caller must own it among processes sharing the data. */
+    public static synchronized void setNode(int id) {
+        if (id < 0 || id > MAX_NODE) {
+            throw new IllegalArgumentException("Node id " + id + " is outside 0-" + MAX_NODE);
+        }
+        if (node >= 0 && node != id) {
+            throw new IllegalStateException("Node id is already " + node);
+        }
+        node = id;
+    }
+
+    public static boolean hasNode() {
+        return node >= 0;
+    }
+
+    static long nextValue() {
+        long nodeId = node;
+        if (nodeId < 0) {
+            throw new IllegalStateException("No node id for order ids yet; the store sets it on startup");
+        }
+        long now = System.currentTimeMillis() << COUNTER_BITS;
+        while (true) {
+            long previous = last.get();
+            long tick = Math.max(previous + 1, now);
+            if (last.compareAndSet(previous, tick)) {
+                return tick << NODE_BITS | nodeId;
+            }
+        }
+    }
+
+    /** Encodes the bits as unsigned, fixed width, most significant first. */
+    static String encode(long value) {
+        char[] chars = new char[LENGTH];
+        for (int i = LENGTH - 1; i >= 0; i--) {
+            chars[i] = DIGITS[(int) (value & 31)];
+            value >>>= 5;
+        }
+        return new String(chars);
+    }
+}
@@ -8,7 +8,7 @@ public class Product implements Serializable {
     private String name;
     private double price;
     private String description;
-    private int stock;
+    private final StockCounter stock;
     private Category category;
 
     public Product(String id, String name, double price, String description, int stock, Category category) {
@@ -16,7 +16,7 @@ public class Product implements Serializable {
         this.name = name;
         this.price = price;
         this.description = description;
-        this.stock = stock;
+        this.stock = new StockCounter(stock);
         this.category = category;
     }
 
@@ -36,7 +36,13 @@ public class Product implements Serializable {
         return description;
     }
 
+    /** Units on hand, including any reserved by carts that have not checked out. */
     public int getStock() {
+        return stock.getOnHand();
+    }
+
+    /** The atomic counter behind the stock level, for reserving units. */
+    public StockCounter getStockCounter() {
         return stock;
     }
 
@@ -61,7 +67,7 @@ public class Product implements Serializable {
     }
 
     public void setStock(int stock) {
-        this.stock = stock;
+        this.stock.set(stock);
     }
 
     public void setCategory(Category category) {
@@ -0,0 +1,127 @@
+package model;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free stock level with reservations.
+ * The on-hand quantity and the reserved quantity are packed into one long and
+ * updated with compare-and-set, so concurrent buyers can never reserve more than
+ * is available, and readers always see a consistent pair.
+ * <p>
+ * A reservation either becomes a sale with {@link #commit} (the units leave the
+ * stock) or is given back with {@link #release}.
+ */
+public class StockCounter implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // High 32 bits: on hand, low 32 bits: reserved
+    private final AtomicLong state;
+
+    public StockCounter(int onHand) {
+        state = new AtomicLong(pack(onHand, 0));
+    }
+
+    /**
+     * Reserves the quantity if that much is available.
+     *
+     * @return false if there is not enough unreserved stock
+     */
+    public boolean tryReserve(int quantity) {
+        while (true) {
+            long current = state.get();
+            int onHand = onHand(current);
+            int reserved = reserved(current);
+            if (quantity <= 0 || onHand - reserved < quantity) {
+                return quantity == 0;
+            }
+            if (state.compareAndSet(current, pack(onHand, reserved + quantity))) {
+                return true;
+            }
+        }
+    }
+
+    /** Turns reserved units into a sale: they are removed from the stock. */
+    public void commit(int quantity) {
+        update(-positive(quantity), -quantity);
+    }
+
+    /** Gives reserved units back. */
+    public void release(int quantity) {
+        update(0, -positive(quantity));
+    }
+
+    /**
+     * Sets the on-hand quantity, e.g. after a recount. Reservations are kept, so the
+     * new level cannot be below what is reserved.
+     *
+     * @throws IllegalArgumentException if the level is negative
+     * @throws IllegalStateException    if more than the new level is reserved
+     */
+    public void set(int onHand) {
+        if (onHand < 0) {
+            throw new IllegalArgumentException("Stock cannot be negative: " + onHand);
+        }
+        while (true) {
+            long current = state.get();
+            int reserved = reserved(current);
+            if (onHand < reserved) {
+                throw new IllegalStateException("Cannot set stock to " + onHand + ", " + reserved + " are reserved");
+            }
+            if (state.compareAndSet(current, pack(onHand, reserved))) {
+                return;
+            }
+        }
+    }
+
+    /** Takes over both counts of another counter, e.g. to mirror a copy kept elsewhere. */
+    public void copyFrom(StockCounter other) {
+        state.set(other.state.get());
+    }
+
+    public int getOnHand() {
+        return onHand(state.get());
+    }
+
+    public int getReserved() {
+        return reserved(state.get());
+    }
+
+    /** Stock that can still be reserved. */
+    public int getAvailable() {
+        long current = state.get();
+        return onHand(current) - reserved(current);
+    }
+
+    private void update(int onHandDelta, int reservedDelta) {
+        while (true) {
+            long current = state.get();
+            int reserved = reserved(current) + reservedDelta;
+            if (reserved < 0) {
+                throw new IllegalStateException("More stock released than was reserved");
+            }
+            if (state.compareAndSet(current, pack(onHand(current) + onHandDelta, reserved))) {
+                return;
+            }
+        }
+    }
+
+    private static int positive(int quantity) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Quantity must be positive: " + quantity);
+        }
+        return quantity;
+    }
+
+    private static long pack(int onHand, int reserved) {
+        return ((long) onHand << 32) | (reserved & 0xFFFFFFFFL);
+    }
+
+    private static int onHand(long state) {
+        return (int) (state >> 32);
+    }
+
+    private static int reserved(long state) {
+        return (int) state;
+    }
+}
@@ -1,6 +1,7 @@
 package view;
 
-import data.DataStore;
+import data.SalesRollup;
+import data.Store;
 import model.Category;
 import model.Order;
 import model.OrderStatus;
@@ -10,6 +11,11 @@ import javafx.collections.FXCollections;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
+import javafx.scene.chart.BarChart;
+import javafx.scene.chart.CategoryAxis;
+import javafx.scene.chart.LineChart;
+import javafx.scene.chart.NumberAxis;
+import javafx.scene.chart.XYChart;
 import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.effect.DropShadow;
@@ -17,12 +23,34 @@ import javafx.scene.layout.*;
 import javafx.scene.paint.Color;
 import javafx.stage.Stage;
 
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
 public class AdminDashboard {
     private Stage stage;
     private User user;
     private TableView<Product> productTable;
     private TableView<User> userTable;
     private TabPane tabPane;
+    private final Label salesValue = new Label();
+    private final Label deliveredValue = new Label();
+    private final Label pendingValue = new Label();
+    private final Label productsValue = new Label();
+    private final Label usersValue = new Label();
+
+    // Sales charts, read from the store's time-bucketed rollups
+    private static final String[] RANGES = {"Last 24 hours", "Last 30 days", "Last 12 months"};
+    private static final int TOP_PRODUCTS = 10;
+    private final ComboBox<String> rangeCombo = new ComboBox<>(FXCollections.observableArrayList(RANGES));
+    private final XYChart.Series<String, Number> totalSeries = new XYChart.Series<>();
+    private final Map<Category, XYChart.Series<String, Number>> categorySeries = new EnumMap<>(Category.class);
+    private final XYChart.Series<String, Number> productSeries = new XYChart.Series<>();
 
     public AdminDashboard(Stage stage, User user) {
         this.stage = stage;
@@ -47,6 +75,12 @@ public class AdminDashboard {
         Tab statsTab = new Tab("Statistics", createStatsTab());
 
         tabPane.getTabs().addAll(productsTab, usersTab, statsTab);
+        // Figures are re-read whenever the tab is opened
+        statsTab.setOnSelectionChanged(e -> {
+            if (statsTab.isSelected()) {
+                refreshStats();
+            }
+        });
         root.setCenter(tabPane);
 
         Scene scene = new Scene(root, 1100, 700);
@@ -207,7 +241,7 @@ public class AdminDashboard {
                         descField.getText(),
                         Integer.parseInt(stockField.getText()),
                         categoryCombo.getValue());
-                DataStore.getInstance().addProduct(newProduct);
+                Store.getInstance().addProduct(newProduct);
                 refreshProductTable();
                 clearFields(idField, nameField, priceField, stockField, descField);
                 showAlert("Product added successfully!", Alert.AlertType.INFORMATION);
@@ -224,13 +258,14 @@ public class AdminDashboard {
             Product selected = productTable.getSelectionModel().getSelectedItem();
             if (selected != null) {
                 try {
-                    selected.setId(idField.getText());
-                    selected.setName(nameField.getText());
-                    selected.setPrice(Double.parseDouble(priceField.getText()));
-                    selected.setStock(Integer.parseInt(stockField.getText()));
-                    selected.setDescription(descField.getText());
-                    selected.setCategory(categoryCombo.getValue());
-                    DataStore.getInstance().saveAllData();
+                    Product updated = new Product(
+                            idField.getText(),
+                            nameField.getText(),
+                            Double.parseDouble(priceField.getText()),
+                            descField.getText(),
+                            Integer.parseInt(stockField.getText()),
+                            categoryCombo.getValue());
+                    Store.getInstance().updateProduct(selected, updated);
                     productTable.getItems().clear();
                     refreshProductTable();
                     showAlert("Product updated successfully!", Alert.AlertType.INFORMATION);
@@ -249,7 +284,7 @@ public class AdminDashboard {
         deleteBtn.setOnAction(e -> {
             Product selected = productTable.getSelectionModel().getSelectedItem();
             if (selected != null) {
-                DataStore.getInstance().removeProduct(selected);
+                Store.getInstance().removeProduct(selected);
                 refreshProductTable();
                 clearFields(idField, nameField, priceField, stockField, descField);
                 showAlert("Product deleted!", Alert.AlertType.INFORMATION);
@@ -345,12 +380,12 @@ public class AdminDashboard {
                 showAlert("Please fill all fields!", Alert.AlertType.WARNING);
                 return;
             }
-            if (DataStore.getInstance().usernameExists(username)) {
+            if (Store.getInstance().usernameExists(username)) {
                 showAlert("Username already exists!", Alert.AlertType.ERROR);
                 return;
             }
 
-            DataStore.getInstance().addUser(new User(username, password, role));
+            Store.getInstance().addUser(new User(username, password, role));
             refreshUserTable();
             usernameField.clear();
             passwordField.clear();
@@ -369,7 +404,7 @@ public class AdminDashboard {
                     showAlert("Cannot delete yourself!", Alert.AlertType.ERROR);
                     return;
                 }
-                DataStore.getInstance().removeUser(selected);
+                Store.getInstance().removeUser(selected);
                 refreshUserTable();
                 showAlert("User deleted!", Alert.AlertType.INFORMATION);
             }
@@ -391,33 +426,115 @@ public class AdminDashboard {
         HBox statsRow = new HBox(30);
         statsRow.setAlignment(Pos.CENTER);
 
-        double totalSales = DataStore.getInstance().getTotalSales();
-        int deliveredOrders = DataStore.getInstance().getTotalOrdersDelivered();
-        int pendingOrders = DataStore.getInstance().getPendingOrdersCount();
-        int totalProducts = DataStore.getInstance().getProducts().size();
-        int totalUsers = DataStore.getInstance().getUsers().size();
-
         statsRow.getChildren().addAll(
-                createBigStatCard("Total Sales", "Rp " + String.format("%,.0f", totalSales), "#28a745"),
-                createBigStatCard("Delivered", String.valueOf(deliveredOrders), "#17a2b8"),
-                createBigStatCard("Pending", String.valueOf(pendingOrders), "#ffc107"),
-                createBigStatCard("Products", String.valueOf(totalProducts), "#6c757d"),
-                createBigStatCard("Users", String.valueOf(totalUsers), "#764ba2"));
+                createBigStatCard("Total Sales", salesValue, "#28a745"),
+                createBigStatCard("Delivered", deliveredValue, "#17a2b8"),
+                createBigStatCard("Pending", pendingValue, "#ffc107"),
+                createBigStatCard("Products", productsValue, "#6c757d"),
+                createBigStatCard("Users", usersValue, "#764ba2"));
+
+        // Revenue over time, in total and per category, and the best selling products
+        rangeCombo.getSelectionModel().select(1);
+        rangeCombo.setOnAction(e -> refreshCharts());
+        HBox rangeRow = new HBox(10, new Label("Period:"), rangeCombo);
+        rangeRow.setAlignment(Pos.CENTER);
+
+        LineChart<String, Number> revenueChart = new LineChart<>(new CategoryAxis(), new NumberAxis());
+        revenueChart.setTitle("Revenue (Rp)");
+        revenueChart.setAnimated(false);
+        revenueChart.setCreateSymbols(false);
+        totalSeries.setName("All");
+        revenueChart.getData().add(totalSeries);
+        for (Category category : Category.values()) {
+            XYChart.Series<String, Number> series = new XYChart.Series<>();
+            series.setName(category.getDisplayName());
+            categorySeries.put(category, series);
+            revenueChart.getData().add(series);
+        }
+
+        BarChart<String, Number> productChart = new BarChart<>(new CategoryAxis(), new NumberAxis());
+        productChart.setTitle("Top " + TOP_PRODUCTS + " Products (Rp)");
+        productChart.setAnimated(false);
+        productChart.setLegendVisible(false);
+        productChart.getData().add(productSeries);
+
+        HBox chartsRow = new HBox(20, revenueChart, productChart);
+        HBox.setHgrow(revenueChart, Priority.ALWAYS);
+        HBox.setHgrow(productChart, Priority.ALWAYS);
+        refreshStats();
 
         Button refreshBtn = new Button("Refresh Statistics");
         refreshBtn.setStyle("-fx-background-color: #667eea; -fx-text-fill: white; -fx-font-weight: bold; " +
                 "-fx-background-radius: 8px; -fx-padding: 10 25;");
-        refreshBtn.setOnAction(e -> {
-            // Refresh by recreating the tab
-            tabPane.getTabs().set(2, new Tab("Statistics", createStatsTab()));
-            tabPane.getSelectionModel().select(2);
-        });
+        refreshBtn.setOnAction(e -> refreshStats());
 
-        content.getChildren().addAll(title, statsRow, refreshBtn);
+        content.getChildren().addAll(title, statsRow, rangeRow, chartsRow, refreshBtn);
         return content;
     }
 
-    private VBox createBigStatCard(String title, String value, String color) {
+    private void refreshStats() {
+        Store store = Store.getInstance();
+        salesValue.setText("Rp " + String.format("%,.0f", store.getTotalSales()));
+        deliveredValue.setText(String.valueOf(store.getTotalOrdersDelivered()));
+        pendingValue.setText(String.valueOf(store.getPendingOrdersCount()));
+        productsValue.setText(String.valueOf(store.getProducts().size()));
+        usersValue.setText(String.valueOf(store.getUsers().size()));
+        refreshCharts();
+    }
+
+    /** Re-reads the charts for the selected period; each point is one rollup bucket. */
+    private void refreshCharts() {
+        Store store = Store.getInstance();
+        ZonedDateTime now = ZonedDateTime.now();
+        SalesRollup.Granularity granularity;
+        ZonedDateTime from;
+        DateTimeFormatter format;
+        switch (rangeCombo.getSelectionModel().getSelectedIndex()) {
+            case 0:
+                granularity = SalesRollup.Granularity.HOUR;
+                from = now.minusHours(23);
+                format = DateTimeFormatter.ofPattern("HH:00");
+                break;
+            case 2:
+                granularity = SalesRollup.Granularity.MONTH;
+                from = now.minusMonths(11);
+                format = DateTimeFormatter.ofPattern("MMM yyyy");
+                break;
+            default:
+                granularity = SalesRollup.Granularity.DAY;
+                from = now.minusDays(29);
+                format = DateTimeFormatter.ofPattern("dd MMM");
+        }
+        long start = from.toInstant().toEpochMilli();
+        long end = granularity.nextStart(granularity.bucketStart(now.toInstant().toEpochMilli()));
+
+        totalSeries.getData().setAll(chartData(store.getSalesSeries(granularity, start, end, null), format));
+        for (Map.Entry<Category, XYChart.Series<String, Number>> entry : categorySeries.entrySet()) {
+            entry.getValue().getData().setAll(
+                    chartData(store.getSalesSeries(granularity, start, end, entry.getKey()), format));
+        }
+
+        List<XYChart.Data<String, Number>> top = new ArrayList<>();
+        for (Map.Entry<String, SalesRollup.Totals> entry : store.getProductSales(granularity, start, end).entrySet()) {
+            if (top.size() == TOP_PRODUCTS) {
+                break;
+            }
+            top.add(new XYChart.Data<>(entry.getKey(), entry.getValue().getRevenue()));
+        }
+        productSeries.getData().setAll(top);
+    }
+
+    private static List<XYChart.Data<String, Number>> chartData(List<SalesRollup.Point> points,
+            DateTimeFormatter format) {
+        List<XYChart.Data<String, Number>> data = new ArrayList<>(points.size());
+        for (SalesRollup.Point point : points) {
+            String label = format.format(Instant.ofEpochMilli(point.getStart()).atZone(ZoneId.systemDefault()));
+            data.add(new XYChart.Data<>(label, point.getTotals().getRevenue()));
+        }
+        return data;
+    }
+
+    private VBox createBigStatCard(String title, Label valueLabel, String color) {
         VBox card = new VBox(10);
         card.setPadding(new Insets(25, 35, 25, 35));
         card.setAlignment(Pos.CENTER);
@@ -428,7 +545,6 @@ public class AdminDashboard {
         shadow.setRadius(15);
         card.setEffect(shadow);
 
-        Label valueLabel = new Label(value);
         valueLabel.setStyle("-fx-font-size: 32px; -fx-font-weight: bold; -fx-text-fill: " + color + ";");
 
         Label titleLabel = new Label(title);
@@ -443,11 +559,11 @@ public class AdminDashboard {
     }
 
     private void refreshProductTable() {
-        productTable.setItems(FXCollections.observableArrayList(DataStore.getInstance().getProducts()));
+        productTable.setItems(FXCollections.observableArrayList(Store.getInstance().getProducts()));
     }
 
     private void refreshUserTable() {
-        userTable.setItems(FXCollections.observableArrayList(DataStore.getInstance().getUsers()));
+        userTable.setItems(FXCollections.observableArrayList(Store.getInstance().getUsers()));
     }
 
     private void clearFields(TextField... fields) {
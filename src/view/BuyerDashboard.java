@@ -1,40 +1,70 @@
 package view;
 
-import data.DataStore;
+import data.OrderPage;
+import data.Store;
+import data.StoreEvent;
+import data.StoreListener;
 import model.CartItem;
 import model.Category;
 import model.Order;
 import model.OrderStatus;
 import model.Product;
 import model.User;
+import javafx.application.Platform;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
-import javafx.scene.effect.DropShadow;
 import javafx.scene.layout.*;
-import javafx.scene.paint.Color;
 import javafx.stage.Stage;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 public class BuyerDashboard {
+    private static final int HISTORY_PAGE_SIZE = 30;
+
     private Stage stage;
     private User user;
     private List<CartItem> cart;
+    // Names this dashboard's cart to the store, which holds its reserved stock under it
+    private final String cartId = UUID.randomUUID().toString();
+    // The store may be across the network, so cart changes and checkout run off the FX
+    // thread; the cart stays put while a checkout is on its way
+    private int pendingAdds;
+    private boolean checkingOut;
+    private Button checkoutBtn;
     private ListView<String> cartListView;
-    private ListView<String> orderHistoryListView;
+    private ListView<Order> orderHistoryListView;
+    private Button olderBtn;
     private Label totalLabel;
-    private FlowPane productContainer;
+    private ProductGrid productGrid;
     private TextField searchField;
     private Category selectedCategory = null;
+    // Cursor of the next older history page; null once everything is shown
+    private String historyCursor;
+    // Bumped on every reload, so pages fetched for the previous list are dropped
+    private long historyGeneration;
+    private boolean historyLoading;
+    // Matches products off the FX thread; only the latest result reaches the grid
+    private final ProductSearch productSearch;
+    private final List<Button> categoryButtons = new ArrayList<>();
+
+    // Stock and order changes pushed by the store update the affected parts in place
+    private final StoreListener storeListener = this::onStoreChanged;
+    private final AtomicBoolean productsChanged = new AtomicBoolean();
+    private final AtomicBoolean stockChanged = new AtomicBoolean();
+    private final AtomicBoolean ordersChanged = new AtomicBoolean();
 
     public BuyerDashboard(Stage stage, User user) {
         this.stage = stage;
         this.user = user;
         this.cart = new ArrayList<>();
+        this.productSearch = new ProductSearch(Platform::runLater, this::showProducts);
     }
 
     public void show() {
@@ -56,14 +86,13 @@ public class BuyerDashboard {
         searchField.setPromptText("Search products...");
         searchField.setPrefWidth(300);
         searchField.setStyle("-fx-background-radius: 20px; -fx-padding: 8 15;");
-        searchField.textProperty().addListener((obs, old, newVal) -> filterProducts());
+        searchField.textProperty().addListener((obs, old, newVal) -> productSearch.typed(newVal, selectedCategory));
 
         Button clearSearchBtn = new Button("Clear");
         clearSearchBtn.setStyle("-fx-background-color: #6c757d; -fx-text-fill: white; -fx-background-radius: 15px;");
         clearSearchBtn.setOnAction(e -> {
             searchField.clear();
-            selectedCategory = null;
-            filterProducts();
+            selectCategory(null);
         });
         searchBox.getChildren().addAll(searchField, clearSearchBtn);
 
@@ -77,22 +106,16 @@ public class BuyerDashboard {
         Button minumanBtn = createCategoryButton("Minuman", Category.MINUMAN);
         Button snackBtn = createCategoryButton("Snack", Category.SNACK);
         categoryTabs.getChildren().addAll(allBtn, makananBtn, minumanBtn, snackBtn);
+        styleCategoryButtons();
 
-        // Product grid
-        ScrollPane scrollPane = new ScrollPane();
-        scrollPane.setStyle("-fx-background: #f8f9fa; -fx-background-color: transparent;");
-        productContainer = new FlowPane();
-        productContainer.setPadding(new Insets(10));
-        productContainer.setHgap(15);
-        productContainer.setVgap(15);
+        // Product grid; builds cards for the visible rows only
+        productGrid = new ProductGrid(this::addToCart);
+        ListView<List<Product>> gridView = productGrid.getNode();
+        VBox.setVgrow(gridView, Priority.ALWAYS);
 
         filterProducts();
 
-        scrollPane.setContent(productContainer);
-        scrollPane.setFitToWidth(true);
-        VBox.setVgrow(scrollPane, Priority.ALWAYS);
-
-        centerContent.getChildren().addAll(searchBox, categoryTabs, scrollPane);
+        centerContent.getChildren().addAll(searchBox, categoryTabs, gridView);
         root.setCenter(centerContent);
 
         // Right: Cart + Order History
@@ -102,6 +125,7 @@ public class BuyerDashboard {
         Scene scene = new Scene(root, 1100, 700);
         stage.setScene(scene);
         stage.setTitle("Camellia Cafe - Order");
+        startListening();
     }
 
     private HBox createHeader() {
@@ -130,7 +154,12 @@ public class BuyerDashboard {
         Button logoutBtn = new Button("Logout");
         logoutBtn.setStyle(
                 "-fx-background-color: white; -fx-text-fill: #764ba2; -fx-font-weight: bold; -fx-background-radius: 20px;");
-        logoutBtn.setOnAction(e -> new LoginView(stage).show());
+        logoutBtn.setOnAction(e -> {
+            stopListening();
+            clearCart();
+            productSearch.close();
+            new LoginView(stage).show();
+        });
 
         header.getChildren().addAll(logo, userLabel, spacer, refreshBtn, logoutBtn);
         return header;
@@ -138,77 +167,35 @@ public class BuyerDashboard {
 
     private Button createCategoryButton(String text, Category category) {
         Button btn = new Button(text);
-        btn.setStyle("-fx-background-color: " + (selectedCategory == category ? "#667eea" : "#e9ecef") +
-                "; -fx-text-fill: " + (selectedCategory == category ? "white" : "#333") +
-                "; -fx-background-radius: 20px; -fx-padding: 8 20;");
-        btn.setOnAction(e -> {
-            selectedCategory = category;
-            filterProducts();
-            show(); // Refresh to update button styles
-        });
+        btn.setUserData(category);
+        btn.setOnAction(e -> selectCategory(category));
+        categoryButtons.add(btn);
         return btn;
     }
 
-    private void filterProducts() {
-        productContainer.getChildren().clear();
-        List<Product> products = DataStore.getInstance().getProducts();
-
-        String search = searchField != null ? searchField.getText().toLowerCase() : "";
-
-        for (Product p : products) {
-            boolean matchesCategory = selectedCategory == null || p.getCategory() == selectedCategory;
-            boolean matchesSearch = search.isEmpty() ||
-                    p.getName().toLowerCase().contains(search) ||
-                    p.getDescription().toLowerCase().contains(search);
+    private void selectCategory(Category category) {
+        selectedCategory = category;
+        styleCategoryButtons();
+        filterProducts();
+    }
 
-            if (matchesCategory && matchesSearch) {
-                productContainer.getChildren().add(createProductCard(p));
-            }
+    /** Highlights the button of the selected category. */
+    private void styleCategoryButtons() {
+        for (Button btn : categoryButtons) {
+            boolean selected = btn.getUserData() == selectedCategory;
+            btn.setStyle("-fx-background-color: " + (selected ? "#667eea" : "#e9ecef") +
+                    "; -fx-text-fill: " + (selected ? "white" : "#333") +
+                    "; -fx-background-radius: 20px; -fx-padding: 8 20;");
         }
     }
 
-    private VBox createProductCard(Product p) {
-        VBox card = new VBox(8);
-        card.setPadding(new Insets(15));
-        card.setPrefWidth(180);
-        card.setStyle("-fx-background-color: white; -fx-background-radius: 10px;");
-
-        DropShadow shadow = new DropShadow();
-        shadow.setColor(Color.rgb(0, 0, 0, 0.1));
-        shadow.setRadius(10);
-        card.setEffect(shadow);
-
-        // Category badge
-        Label categoryBadge = new Label(p.getCategory().getDisplayName());
-        categoryBadge.setStyle("-fx-background-color: #667eea; -fx-text-fill: white; " +
-                "-fx-padding: 3 10; -fx-background-radius: 10px; -fx-font-size: 10px;");
-
-        Label nameLabel = new Label(p.getName());
-        nameLabel.setStyle("-fx-font-weight: bold; -fx-font-size: 14px;");
-        nameLabel.setWrapText(true);
-
-        Label descLabel = new Label(p.getDescription());
-        descLabel.setStyle("-fx-text-fill: #666; -fx-font-size: 11px;");
-        descLabel.setWrapText(true);
-
-        Label priceLabel = new Label("Rp " + String.format("%,.0f", p.getPrice()));
-        priceLabel.setStyle("-fx-font-weight: bold; -fx-font-size: 16px; -fx-text-fill: #28a745;");
-
-        Label stockLabel = new Label("Stock: " + p.getStock());
-        stockLabel.setStyle("-fx-text-fill: " + (p.getStock() > 5 ? "#666" : "#dc3545") + "; -fx-font-size: 11px;");
-
-        Spinner<Integer> qtySpinner = new Spinner<>(1, Math.max(1, p.getStock()), 1);
-        qtySpinner.setPrefWidth(70);
-        qtySpinner.setEditable(true);
-
-        Button addBtn = new Button("+ Add to Cart");
-        addBtn.setMaxWidth(Double.MAX_VALUE);
-        addBtn.setStyle("-fx-background-color: #667eea; -fx-text-fill: white; -fx-background-radius: 5px;");
-        addBtn.setDisable(p.getStock() <= 0);
-        addBtn.setOnAction(e -> addToCart(p, qtySpinner.getValue()));
+    /** Searches for the current text and category without waiting for more typing. */
+    private void filterProducts() {
+        productSearch.now(searchField != null ? searchField.getText() : "", selectedCategory);
+    }
 
-        card.getChildren().addAll(categoryBadge, nameLabel, descLabel, priceLabel, stockLabel, qtySpinner, addBtn);
-        return card;
+    private void showProducts(List<Product> products) {
+        productGrid.setProducts(products);
     }
 
     private VBox createRightPanel() {
@@ -234,8 +221,11 @@ public class BuyerDashboard {
         Button clearCartBtn = new Button("Clear All");
         clearCartBtn.setStyle("-fx-background-color: #6c757d; -fx-text-fill: white; -fx-background-radius: 5px;");
         clearCartBtn.setOnAction(e -> {
-            cart.clear();
-            refreshCart();
+            if (checkingOut) {
+                showAlert("Please wait for the checkout to finish", Alert.AlertType.WARNING);
+            } else {
+                clearCart();
+            }
         });
         cartActions.getChildren().addAll(removeBtn, clearCartBtn);
 
@@ -246,7 +236,7 @@ public class BuyerDashboard {
         roomField.setPromptText("Room Number (e.g., 101)");
         roomField.setStyle("-fx-background-radius: 8px; -fx-padding: 10;");
 
-        Button checkoutBtn = new Button("✓ Checkout");
+        checkoutBtn = new Button("✓ Checkout");
         checkoutBtn.setMaxWidth(Double.MAX_VALUE);
         checkoutBtn.setPrefHeight(40);
         checkoutBtn.setStyle("-fx-background-color: #28a745; -fx-text-fill: white; -fx-font-weight: bold; " +
@@ -268,13 +258,39 @@ public class BuyerDashboard {
         Region spacer = new Region();
         HBox.setHgrow(spacer, Priority.ALWAYS);
 
+        olderBtn = new Button("Older");
+        olderBtn.setStyle("-fx-background-color: #e9ecef; -fx-text-fill: #333; -fx-background-radius: 15px;");
+        olderBtn.setDisable(true);
+        olderBtn.setOnAction(e -> loadOlderOrders());
+
         Button refreshHistoryBtn = new Button("🔄");
         refreshHistoryBtn.setStyle("-fx-background-color: #667eea; -fx-text-fill: white; -fx-background-radius: 15px;");
         refreshHistoryBtn.setOnAction(e -> refreshOrderHistory());
-        orderHistoryHeader.getChildren().addAll(orderHistoryTitle, spacer, refreshHistoryBtn);
+        orderHistoryHeader.getChildren().addAll(orderHistoryTitle, spacer, olderBtn, refreshHistoryBtn);
 
+        // Newest first; rows are formatted only when they come into view
         orderHistoryListView = new ListView<>();
         orderHistoryListView.setPrefHeight(200);
+        orderHistoryListView.setPlaceholder(new Label("No orders yet"));
+        orderHistoryListView.setCellFactory(list -> new ListCell<Order>() {
+            @Override
+            protected void updateItem(Order order, boolean empty) {
+                super.updateItem(order, empty);
+                if (empty || order == null) {
+                    setText(null);
+                    return;
+                }
+                String items = order.getItems().stream()
+                        .map(i -> i.getProduct().getName() + " x" + i.getQuantity())
+                        .collect(Collectors.joining(", "));
+                setText(getStatusIcon(order.getStatus()) + " " + order.getOrderId() + " | Room: " +
+                        order.getRoomName() + " | " + order.getStatusDisplay() + "\n   " + items);
+                // Reaching the last row pulls in the next page
+                if (getIndex() == getListView().getItems().size() - 1) {
+                    loadOlderOrders();
+                }
+            }
+        });
         VBox.setVgrow(orderHistoryListView, Priority.ALWAYS);
 
         orderHistoryBox.getChildren().addAll(orderHistoryHeader, orderHistoryListView);
@@ -285,12 +301,40 @@ public class BuyerDashboard {
         return rightPanel;
     }
 
-    private void addToCart(Product p, int qty) {
-        if (p.getStock() < qty) {
-            showAlert("Not enough stock!", Alert.AlertType.WARNING);
+    private void addToCart(Product shown, int qty) {
+        if (checkingOut) {
+            showAlert("Please wait for the checkout to finish", Alert.AlertType.WARNING);
             return;
         }
+        pendingAdds++;
+        CompletableFuture.supplyAsync(() -> reserve(shown, qty))
+                .whenComplete((p, error) -> Platform.runLater(() -> {
+                    pendingAdds--;
+                    if (error != null) {
+                        Throwable cause = error.getCause() != null ? error.getCause() : error;
+                        showAlert(cause.getMessage(), Alert.AlertType.WARNING);
+                        return;
+                    }
+                    putInCart(p, qty);
+                }));
+    }
+
+    /** Reserves the units for this cart; runs off the FX thread. */
+    private Product reserve(Product shown, int qty) {
+        // The card may be stale; check against the store's current product
+        Product p = Store.getInstance().findProduct(shown.getId());
+        if (p == null) {
+            throw new IllegalStateException("This product is no longer available!");
+        }
+        // Hold the stock while it sits in the cart, so other buyers cannot take it
+        if (!Store.getInstance().reserveStock(cartId, p, qty)) {
+            throw new IllegalStateException("Not enough stock!");
+        }
+        return p;
+    }
 
+    /** Puts reserved units in the cart. */
+    private void putInCart(Product p, int qty) {
         for (CartItem item : cart) {
             if (item.getProduct().getId().equals(p.getId())) {
                 item.setQuantity(item.getQuantity() + qty);
@@ -306,13 +350,37 @@ public class BuyerDashboard {
     private void removeFromCart() {
         int selectedIndex = cartListView.getSelectionModel().getSelectedIndex();
         if (selectedIndex >= 0 && selectedIndex < cart.size()) {
-            cart.remove(selectedIndex);
+            if (checkingOut) {
+                showAlert("Please wait for the checkout to finish", Alert.AlertType.WARNING);
+                return;
+            }
+            CartItem removed = cart.remove(selectedIndex);
+            release(List.of(removed));
             refreshCart();
         } else {
             showAlert("Please select an item to remove", Alert.AlertType.WARNING);
         }
     }
 
+    private void clearCart() {
+        release(new ArrayList<>(cart));
+        cart.clear();
+        refreshCart();
+    }
+
+    /** Gives the items' stock back in the background. */
+    private void release(List<CartItem> items) {
+        CompletableFuture.runAsync(() -> {
+            for (CartItem item : items) {
+                Store.getInstance().releaseStock(cartId, item.getProduct(), item.getQuantity());
+            }
+        }).whenComplete((ok, error) -> {
+            if (error != null) {
+                System.err.println("Could not release cart stock: " + error.getMessage());
+            }
+        });
+    }
+
     private void refreshCart() {
         cartListView.getItems().clear();
         double total = 0;
@@ -325,27 +393,51 @@ public class BuyerDashboard {
         totalLabel.setText("Total: Rp " + String.format("%,.0f", total));
     }
 
+    /** Reloads the history from the newest order, keeping as many rows as were shown. */
     private void refreshOrderHistory() {
-        orderHistoryListView.getItems().clear();
-        List<Order> myOrders = DataStore.getInstance().getOrders().stream()
-                .filter(o -> o.getBuyerUsername().equals(user.getUsername()))
-                .collect(Collectors.toList());
+        loadHistory(null, Math.max(HISTORY_PAGE_SIZE, orderHistoryListView.getItems().size()), true);
+    }
 
-        if (myOrders.isEmpty()) {
-            orderHistoryListView.getItems().add("No orders yet");
-        } else {
-            for (Order order : myOrders) {
-                String statusIcon = getStatusIcon(order.getStatus());
-                String items = order.getItems().stream()
-                        .map(i -> i.getProduct().getName() + " x" + i.getQuantity())
-                        .collect(Collectors.joining(", "));
-                orderHistoryListView.getItems().add(
-                        statusIcon + " " + order.getOrderId() + " | Room: " + order.getRoomName() +
-                                " | " + order.getStatusDisplay() + "\n   " + items);
-            }
+    /** Appends the next older page, unless everything is shown or a page is on its way. */
+    private void loadOlderOrders() {
+        if (historyCursor != null && !historyLoading) {
+            loadHistory(historyCursor, HISTORY_PAGE_SIZE, false);
         }
     }
 
+    /**
+     * Fetches a history page off the FX thread. Pages that come back empty, i.e. archived
+     * months without orders from this buyer, are skipped.
+     */
+    private void loadHistory(String cursor, int limit, boolean replace) {
+        long generation = ++historyGeneration;
+        historyLoading = true;
+        String buyer = user.getUsername();
+        CompletableFuture.supplyAsync(() -> {
+            OrderPage page = Store.getInstance().getOrderHistory(buyer, cursor, limit);
+            while (page.getOrders().isEmpty() && page.hasMore()) {
+                page = Store.getInstance().getOrderHistory(buyer, page.getNextCursor(), limit);
+            }
+            return page;
+        }).whenComplete((page, error) -> Platform.runLater(() -> {
+            if (generation != historyGeneration) {
+                return;
+            }
+            historyLoading = false;
+            if (error != null) {
+                System.err.println("Could not load order history: " + error.getMessage());
+                return;
+            }
+            if (replace) {
+                orderHistoryListView.getItems().setAll(page.getOrders());
+            } else {
+                orderHistoryListView.getItems().addAll(page.getOrders());
+            }
+            historyCursor = page.getNextCursor();
+            olderBtn.setDisable(historyCursor == null);
+        }));
+    }
+
     private String getStatusIcon(OrderStatus status) {
         switch (status) {
             case PENDING:
@@ -371,18 +463,84 @@ public class BuyerDashboard {
             return;
         }
 
-        Order order = new Order(user.getUsername(), roomName, new ArrayList<>(cart));
-        DataStore.getInstance().addOrder(order);
+        if (checkingOut || pendingAdds > 0) {
+            showAlert("Please wait until the cart is updated", Alert.AlertType.WARNING);
+            return;
+        }
 
-        for (CartItem item : cart) {
-            DataStore.getInstance().updateProductStock(item.getProduct().getId(), item.getQuantity());
+        // The cart's reserved stock and the order are saved together
+        checkingOut = true;
+        checkoutBtn.setDisable(true);
+        List<CartItem> items = new ArrayList<>(cart);
+        String buyer = user.getUsername();
+        CompletableFuture.supplyAsync(() -> Store.getInstance().checkoutReserved(cartId, buyer, roomName, items))
+                .whenComplete((order, error) -> Platform.runLater(() -> {
+                    checkingOut = false;
+                    checkoutBtn.setDisable(false);
+                    if (error != null) {
+                        Throwable cause = error.getCause() != null ? error.getCause() : error;
+                        showAlert(cause.getMessage() + "!", Alert.AlertType.WARNING);
+                        filterProducts();
+                        return;
+                    }
+                    cart.clear();
+                    refreshCart();
+                    refreshOrderHistory();
+                    confirmWhenSaved(order);
+                }));
+    }
+
+    /** Confirms the order only once it is safely on disk. */
+    private void confirmWhenSaved(Order order) {
+        Store.getInstance().requestFlush().whenComplete((ok, error) -> Platform.runLater(() -> {
+            if (error != null) {
+                showAlert("Order " + order.getOrderId() + " could not be saved yet. It will be retried.",
+                        Alert.AlertType.ERROR);
+            } else {
+                showAlert("Order placed successfully!\nOrder ID: " + order.getOrderId(),
+                        Alert.AlertType.INFORMATION);
+            }
+        }));
+    }
+
+    private void startListening() {
+        Store.getInstance().removeListener(storeListener);
+        Store.getInstance().addListener(storeListener);
+    }
+
+    private void stopListening() {
+        Store.getInstance().removeListener(storeListener);
+    }
+
+    /**
+     * Called on the store's event thread. Each kind of change is folded into at most
+     * one pending update on the FX thread: stock redraws the visible cards, product
+     * changes re-run the search, and order changes reload the history.
+     */
+    private void onStoreChanged(StoreEvent event) {
+        switch (event.getType()) {
+            case STOCK_CHANGED:
+                runOnce(stockChanged, productGrid::refresh);
+                break;
+            case PRODUCT_CHANGED:
+                runOnce(productsChanged, this::filterProducts);
+                break;
+            case ORDER_STATUS_CHANGED:
+            case ORDER_ARCHIVED:
+                runOnce(ordersChanged, this::refreshOrderHistory);
+                break;
+            default:
+                break;
         }
+    }
 
-        showAlert("Order placed successfully!\nOrder ID: " + order.getOrderId(), Alert.AlertType.INFORMATION);
-        cart.clear();
-        refreshCart();
-        refreshOrderHistory();
-        filterProducts();
+    private void runOnce(AtomicBoolean queued, Runnable update) {
+        if (queued.compareAndSet(false, true)) {
+            Platform.runLater(() -> {
+                queued.set(false);
+                update.run();
+            });
+        }
     }
 
     private void showAlert(String msg, Alert.AlertType type) {
@@ -1,6 +1,6 @@
 package view;
 
-import data.DataStore;
+import data.Store;
 import model.User;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
@@ -92,7 +92,7 @@ public class LoginView {
             String username = usernameField.getText();
             String password = passwordField.getText();
 
-            User user = DataStore.getInstance().authenticate(username, password);
+            User user = Store.getInstance().authenticate(username, password);
             if (user != null) {
                 redirect(user);
             } else {
@@ -0,0 +1,96 @@
+package view;
+
+import model.Product;
+import javafx.geometry.Insets;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.Spinner;
+import javafx.scene.control.SpinnerValueFactory;
+import javafx.scene.effect.DropShadow;
+import javafx.scene.layout.VBox;
+import javafx.scene.paint.Color;
+
+import java.util.function.BiConsumer;
+
+/**
+ * One product tile on the buyer's menu.
+ * Cards are recycled by {@link ProductGrid}: {@link #show} points an existing card at
+ * another product instead of building a new one.
+ */
+public class ProductCard extends VBox {
+    public static final double WIDTH = 180;
+
+    // Effects can be shared, so every card uses the same one
+    private static final DropShadow SHADOW = new DropShadow(10, Color.rgb(0, 0, 0, 0.1));
+
+    private final Label categoryBadge = new Label();
+    private final Label nameLabel = new Label();
+    private final Label descLabel = new Label();
+    private final Label priceLabel = new Label();
+    private final Label stockLabel = new Label();
+    private final Spinner<Integer> qtySpinner = new Spinner<>(1, 1, 1);
+    private final SpinnerValueFactory.IntegerSpinnerValueFactory qtyFactory;
+    private final Button addBtn = new Button("+ Add to Cart");
+    private Product product;
+    private boolean lowStock;
+
+    /**
+     * @param onAdd called with the shown product and the chosen quantity
+     */
+    public ProductCard(BiConsumer<Product, Integer> onAdd) {
+        super(8);
+        setPadding(new Insets(15));
+        setPrefWidth(WIDTH);
+        setStyle("-fx-background-color: white; -fx-background-radius: 10px;");
+        setEffect(SHADOW);
+
+        categoryBadge.setStyle("-fx-background-color: #667eea; -fx-text-fill: white; " +
+                "-fx-padding: 3 10; -fx-background-radius: 10px; -fx-font-size: 10px;");
+        nameLabel.setStyle("-fx-font-weight: bold; -fx-font-size: 14px;");
+        nameLabel.setWrapText(true);
+        descLabel.setStyle("-fx-text-fill: #666; -fx-font-size: 11px;");
+        descLabel.setWrapText(true);
+        priceLabel.setStyle("-fx-font-weight: bold; -fx-font-size: 16px; -fx-text-fill: #28a745;");
+        stockLabel.setStyle("-fx-text-fill: #666; -fx-font-size: 11px;");
+
+        qtyFactory = (SpinnerValueFactory.IntegerSpinnerValueFactory) qtySpinner.getValueFactory();
+        qtySpinner.setPrefWidth(70);
+        qtySpinner.setEditable(true);
+
+        addBtn.setMaxWidth(Double.MAX_VALUE);
+        addBtn.setStyle("-fx-background-color: #667eea; -fx-text-fill: white; -fx-background-radius: 5px;");
+        addBtn.setOnAction(e -> {
+            if (product != null) {
+                onAdd.accept(product, qtySpinner.getValue());
+            }
+        });
+
+        getChildren().addAll(categoryBadge, nameLabel, descLabel, priceLabel, stockLabel, qtySpinner, addBtn);
+    }
+
+    /** Shows the given product, resetting the quantity if it is a different one. */
+    public void show(Product p) {
+        if (p != product) {
+            product = p;
+            qtyFactory.setValue(1);
+        }
+        categoryBadge.setText(p.getCategory().getDisplayName());
+        nameLabel.setText(p.getName());
+        descLabel.setText(p.getDescription());
+        priceLabel.setText("Rp " + String.format("%,.0f", p.getPrice()));
+
+        // Show what can still be added, i.e. without units held in other carts
+        int available = p.getStockCounter().getAvailable();
+        stockLabel.setText("Stock: " + available);
+        if (lowStock != available <= 5) {
+            lowStock = available <= 5;
+            stockLabel.setStyle("-fx-text-fill: " + (lowStock ? "#dc3545" : "#666") + "; -fx-font-size: 11px;");
+        }
+        qtyFactory.setMax(Math.max(1, available));
+        addBtn.setDisable(available <= 0);
+    }
+
+    public Product getProduct() {
+        return product;
+    }
+}
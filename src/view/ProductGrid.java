@@ -0,0 +1,125 @@
+package view;
+
+import model.Product;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.layout.HBox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Scrollable grid of {@link ProductCard}s that only builds the cards on screen.
+ * It is a ListView whose rows hold as many cards as fit the width; the ListView
+ * creates cells for the visible rows only and reuses them while scrolling, and each
+ * row cell keeps its cards, so scrolling or filtering just points them at other products.
+ * Stock changes redraw the cards of the live cells in place; {@code ListView.refresh()}
+ * would throw every cell away and build them again.
+ */
+public class ProductGrid {
+    private static final double GAP = 15;
+    private static final double PADDING = 10;
+
+    private final ListView<List<Product>> rows = new ListView<>();
+    private final BiConsumer<Product, Integer> onAdd;
+    private List<Product> products = List.of();
+    private int columns = 1;
+    // Every cell the ListView made, so a refresh can redraw their cards
+    private final List<RowCell> cells = new ArrayList<>();
+
+    /**
+     * @param onAdd called when a card's add button is pressed
+     */
+    public ProductGrid(BiConsumer<Product, Integer> onAdd) {
+        this.onAdd = onAdd;
+        rows.setCellFactory(list -> {
+            RowCell cell = new RowCell();
+            cells.add(cell);
+            return cell;
+        });
+        rows.setFocusTraversable(false);
+        rows.setStyle("-fx-background-color: transparent; -fx-control-inner-background: #f8f9fa; " +
+                "-fx-background-insets: 0; -fx-padding: " + PADDING + ";");
+        rows.widthProperty().addListener((obs, old, width) -> {
+            // Leave room for the scroll bar
+            int fit = (int) ((width.doubleValue() - 2 * PADDING - 20 + GAP) / (ProductCard.WIDTH + GAP));
+            fit = Math.max(1, fit);
+            if (fit != columns) {
+                columns = fit;
+                fillRows();
+            }
+        });
+    }
+
+    public ListView<List<Product>> getNode() {
+        return rows;
+    }
+
+    /** Shows these products, scrolled to the top unless they are the ones already shown. */
+    public void setProducts(List<Product> products) {
+        if (products.equals(this.products)) {
+            refresh();
+            return;
+        }
+        this.products = List.copyOf(products);
+        fillRows();
+        rows.scrollTo(0);
+    }
+
+    /** Redraws the visible cards, e.g. after stock levels changed. */
+    public void refresh() {
+        for (RowCell cell : cells) {
+            cell.showCards();
+        }
+    }
+
+    private void fillRows() {
+        List<List<Product>> chunks = new ArrayList<>((products.size() + columns - 1) / columns);
+        for (int i = 0; i < products.size(); i += columns) {
+            chunks.add(products.subList(i, Math.min(products.size(), i + columns)));
+        }
+        rows.getItems().setAll(chunks);
+    }
+
+    private class RowCell extends ListCell<List<Product>> {
+        private final HBox cards = new HBox(GAP);
+
+        RowCell() {
+            setStyle("-fx-background-color: transparent; -fx-padding: 0 0 " + GAP + " 0;");
+        }
+
+        @Override
+        protected void updateItem(List<Product> row, boolean empty) {
+            super.updateItem(row, empty);
+            setText(null);
+            if (empty || row == null) {
+                setGraphic(null);
+                return;
+            }
+            // Cards are only added when the grid got wider than this row has been
+            while (cards.getChildren().size() < row.size()) {
+                cards.getChildren().add(new ProductCard(onAdd));
+            }
+            showCards();
+            setGraphic(cards);
+        }
+
+        /** Points the cards at the row's products again; nothing to do for an empty cell. */
+        void showCards() {
+            List<Product> row = getItem();
+            if (isEmpty() || row == null) {
+                return;
+            }
+            for (int i = 0; i < cards.getChildren().size(); i++) {
+                ProductCard card = (ProductCard) cards.getChildren().get(i);
+                boolean used = i < row.size();
+                card.setVisible(used);
+                card.setManaged(used);
+                if (used) {
+                    card.show(row.get(i));
+                }
+            }
+        }
+    }
+}
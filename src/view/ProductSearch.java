@@ -0,0 +1,92 @@
+package view;
+
+import data.Store;
+import model.Category;
+import model.Product;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Runs product searches for a screen off the UI thread.
+ * Keystrokes are debounced, and every new request supersedes the ones before it: a
+ * superseded search is cancelled if it has not started yet, and its result is dropped
+ * if it has. Only the latest result is handed to the screen, on the UI thread.
+ */
+public class ProductSearch implements AutoCloseable {
+    // Wait this long after the last keystroke before searching
+    public static final long TYPING_DELAY_MS = 150;
+
+    private final Executor uiThread;
+    private final Consumer<List<Product>> onResult;
+    private final ScheduledExecutorService worker = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "product-search");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Number of the latest request; results of older ones are dropped
+    private final AtomicLong latest = new AtomicLong();
+    // Guarded by this
+    private ScheduledFuture<?> scheduled;
+
+    /**
+     * @param uiThread runs the result callback, e.g. {@code Platform::runLater}
+     * @param onResult receives the products of the latest search
+     */
+    public ProductSearch(Executor uiThread, Consumer<List<Product>> onResult) {
+        this.uiThread = uiThread;
+        this.onResult = onResult;
+    }
+
+    /** Searches after the typing delay, unless another request comes in first. */
+    public void typed(String keyword, Category category) {
+        request(keyword, category, TYPING_DELAY_MS);
+    }
+
+    /** Searches right away, e.g. after a category was picked. */
+    public void now(String keyword, Category category) {
+        request(keyword, category, 0);
+    }
+
+    private synchronized void request(String keyword, Category category, long delayMs) {
+        long id = latest.incrementAndGet();
+        if (scheduled != null) {
+            scheduled.cancel(false);
+        }
+        scheduled = worker.schedule(() -> run(id, keyword, category), delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void run(long id, String keyword, Category category) {
+        if (id != latest.get()) {
+            return;
+        }
+        List<Product> result;
+        try {
+            result = Store.getInstance().searchProducts(keyword, category);
+        } catch (RuntimeException e) {
+            System.err.println("Product search failed: " + e.getMessage());
+            return;
+        }
+        // Check again on the UI thread: a newer request may have come in meanwhile
+        if (id == latest.get()) {
+            uiThread.execute(() -> {
+                if (id == latest.get()) {
+                    onResult.accept(result);
+                }
+            });
+        }
+    }
+
+    @Override
+    public void close() {
+        latest.incrementAndGet();
+        worker.shutdownNow();
+    }
+}
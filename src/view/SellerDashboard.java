@@ -1,13 +1,17 @@
 package view;
 
-import data.DataStore;
+import data.KitchenQueue;
+import data.PrepTicket;
+import data.Store;
+import data.StoreEvent;
+import data.StoreListener;
 import model.Order;
 import model.OrderStatus;
 import model.User;
-import javafx.animation.KeyFrame;
-import javafx.animation.Timeline;
+import javafx.application.Platform;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
@@ -16,16 +20,35 @@ import javafx.scene.effect.DropShadow;
 import javafx.scene.layout.*;
 import javafx.scene.paint.Color;
 import javafx.stage.Stage;
-import javafx.util.Duration;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 public class SellerDashboard {
     private Stage stage;
     private User user;
     private TableView<Order> table;
-    private Label statsLabel;
-    private Timeline autoRefresh;
+    // The table's rows; refreshTable() applies only what changed since the last refresh
+    private final ObservableList<Order> rows = FXCollections.observableArrayList();
+    // Status each row was last shown with, by order id
+    private final Map<String, OrderStatus> shownStatus = new HashMap<>();
+    // Batches the same dish across open orders into prep tickets
+    private final KitchenQueue kitchen = new KitchenQueue((o, status) -> Store.getInstance().updateOrderStatus(o, status));
+    private final ListView<PrepTicket> ticketList = new ListView<>();
+    private Label pendingValue;
+    private Label preparingValue;
+    private Label deliveredValue;
+
+    // Refreshes on order changes pushed by the store instead of polling
+    private final StoreListener orderListener = this::onStoreChanged;
+    private final AtomicBoolean refreshQueued = new AtomicBoolean();
 
     public SellerDashboard(Stage stage, User user) {
         this.stage = stage;
@@ -48,20 +71,22 @@ public class SellerDashboard {
         HBox statsBox = createStatsBox();
         content.getChildren().add(statsBox);
 
-        // Table
+        // Table and prep tickets
         VBox tableBox = createTableBox();
-        VBox.setVgrow(tableBox, Priority.ALWAYS);
-        content.getChildren().add(tableBox);
+        HBox.setHgrow(tableBox, Priority.ALWAYS);
+        HBox work = new HBox(15, tableBox, createTicketBox());
+        VBox.setVgrow(work, Priority.ALWAYS);
+        content.getChildren().add(work);
 
         root.setCenter(content);
 
-        // Start auto-refresh
-        startAutoRefresh();
+        // Follow new orders and status changes
+        startListening();
 
-        Scene scene = new Scene(root, 1000, 700);
+        Scene scene = new Scene(root, 1250, 700);
         stage.setScene(scene);
         stage.setTitle("Seller Dashboard - Kitchen");
-        stage.setOnCloseRequest(e -> stopAutoRefresh());
+        stage.setOnCloseRequest(e -> stopListening());
     }
 
     private HBox createHeader() {
@@ -88,7 +113,7 @@ public class SellerDashboard {
         logoutBtn.setStyle(
                 "-fx-background-color: white; -fx-text-fill: #ff7e5f; -fx-font-weight: bold; -fx-background-radius: 20px;");
         logoutBtn.setOnAction(e -> {
-            stopAutoRefresh();
+            stopListening();
             new LoginView(stage).show();
         });
 
@@ -100,22 +125,27 @@ public class SellerDashboard {
         HBox statsBox = new HBox(20);
         statsBox.setAlignment(Pos.CENTER_LEFT);
 
-        int pending = (int) DataStore.getInstance().getOrders().stream()
-                .filter(o -> o.getStatus() == OrderStatus.PENDING).count();
-        int preparing = (int) DataStore.getInstance().getOrders().stream()
-                .filter(o -> o.getStatus() == OrderStatus.PREPARING).count();
-        int delivered = (int) DataStore.getInstance().getOrders().stream()
-                .filter(o -> o.getStatus() == OrderStatus.DELIVERED).count();
+        pendingValue = new Label();
+        preparingValue = new Label();
+        deliveredValue = new Label();
+        refreshStats();
 
         statsBox.getChildren().addAll(
-                createStatCard("Pending", String.valueOf(pending), "#ffc107"),
-                createStatCard("Preparing", String.valueOf(preparing), "#17a2b8"),
-                createStatCard("Delivered", String.valueOf(delivered), "#28a745"));
+                createStatCard("Pending", pendingValue, "#ffc107"),
+                createStatCard("Preparing", preparingValue, "#17a2b8"),
+                createStatCard("Delivered", deliveredValue, "#28a745"));
 
         return statsBox;
     }
 
-    private VBox createStatCard(String title, String value, String color) {
+    private void refreshStats() {
+        Store store = Store.getInstance();
+        pendingValue.setText(String.valueOf(store.countOrdersByStatus(OrderStatus.PENDING)));
+        preparingValue.setText(String.valueOf(store.countOrdersByStatus(OrderStatus.PREPARING)));
+        deliveredValue.setText(String.valueOf(store.countOrdersByStatus(OrderStatus.DELIVERED)));
+    }
+
+    private VBox createStatCard(String title, Label valueLabel, String color) {
         VBox card = new VBox(5);
         card.setPadding(new Insets(15, 25, 15, 25));
         card.setAlignment(Pos.CENTER);
@@ -126,7 +156,6 @@ public class SellerDashboard {
         shadow.setRadius(10);
         card.setEffect(shadow);
 
-        Label valueLabel = new Label(value);
         valueLabel.setStyle("-fx-font-size: 28px; -fx-font-weight: bold; -fx-text-fill: " + color + ";");
 
         Label titleLabel = new Label(title);
@@ -148,7 +177,7 @@ public class SellerDashboard {
         Label tableTitle = new Label("Order Queue");
         tableTitle.setStyle("-fx-font-size: 18px; -fx-font-weight: bold;");
 
-        table = new TableView<>();
+        table = new TableView<>(rows);
         table.setStyle("-fx-background-radius: 8px;");
         VBox.setVgrow(table, Priority.ALWAYS);
 
@@ -227,6 +256,86 @@ public class SellerDashboard {
         return tableBox;
     }
 
+    private VBox createTicketBox() {
+        VBox ticketBox = new VBox(10);
+        ticketBox.setPrefWidth(260);
+        ticketBox.setStyle("-fx-background-color: white; -fx-background-radius: 10px; -fx-padding: 15;");
+
+        DropShadow shadow = new DropShadow();
+        shadow.setColor(Color.rgb(0, 0, 0, 0.1));
+        shadow.setRadius(10);
+        ticketBox.setEffect(shadow);
+
+        Label title = new Label("Prep Tickets");
+        title.setStyle("-fx-font-size: 18px; -fx-font-weight: bold;");
+
+        Label hint = new Label("Same dish across orders, most urgent first");
+        hint.setStyle("-fx-text-fill: #666; -fx-font-size: 11px;");
+        hint.setWrapText(true);
+
+        ticketList.setCellFactory(list -> new ListCell<PrepTicket>() {
+            @Override
+            protected void updateItem(PrepTicket ticket, boolean empty) {
+                super.updateItem(ticket, empty);
+                if (empty || ticket == null) {
+                    setText(null);
+                } else {
+                    String rooms = ticket.getOrders().stream()
+                            .map(Order::getRoomName)
+                            .collect(Collectors.joining(", "));
+                    setText(ticket + "\n   Rooms: " + rooms);
+                }
+            }
+        });
+        VBox.setVgrow(ticketList, Priority.ALWAYS);
+
+        Button nextBtn = new Button("Next Batch");
+        nextBtn.setMaxWidth(Double.MAX_VALUE);
+        nextBtn.setStyle("-fx-background-color: #17a2b8; -fx-text-fill: white; -fx-font-weight: bold; " +
+                "-fx-background-radius: 8px; -fx-padding: 10 20;");
+        nextBtn.setOnAction(e -> startNextBatch());
+
+        Button doneBtn = new Button("Batch Done");
+        doneBtn.setMaxWidth(Double.MAX_VALUE);
+        doneBtn.setStyle("-fx-background-color: #28a745; -fx-text-fill: white; -fx-font-weight: bold; " +
+                "-fx-background-radius: 8px; -fx-padding: 10 20;");
+        doneBtn.setOnAction(e -> finishBatch());
+
+        syncKitchen();
+        ticketBox.getChildren().addAll(title, hint, ticketList, nextBtn, doneBtn);
+        return ticketBox;
+    }
+
+    private void startNextBatch() {
+        syncKitchen();
+        PrepTicket ticket = kitchen.nextTicket();
+        if (ticket == null) {
+            showAlert("Nothing left to cook!", Alert.AlertType.INFORMATION);
+            return;
+        }
+        // Moves its pending orders to PREPARING
+        kitchen.start(ticket);
+        ticketList.getItems().add(ticket);
+    }
+
+    private void finishBatch() {
+        PrepTicket selected = ticketList.getSelectionModel().getSelectedItem();
+        if (selected == null) {
+            showAlert("Please select a ticket first!", Alert.AlertType.WARNING);
+            return;
+        }
+        // Delivers the orders that have nothing else left to cook
+        kitchen.finish(selected);
+        ticketList.getItems().remove(selected);
+    }
+
+    /** Queues new open orders and drops those delivered or cancelled elsewhere. */
+    private void syncKitchen() {
+        List<Order> open = new ArrayList<>(Store.getInstance().getOrdersByStatus(OrderStatus.PENDING));
+        open.addAll(Store.getInstance().getOrdersByStatus(OrderStatus.PREPARING));
+        kitchen.sync(open);
+    }
+
     private void updateOrderStatus(OrderStatus newStatus) {
         Order selected = table.getSelectionModel().getSelectedItem();
         if (selected != null) {
@@ -238,10 +347,15 @@ public class SellerDashboard {
                 showAlert("Can only deliver orders that are PREPARING!", Alert.AlertType.WARNING);
                 return;
             }
-            selected.setStatus(newStatus);
-            DataStore.getInstance().saveAllData();
+            try {
+                Store.getInstance().updateOrderStatus(selected, newStatus);
+            } catch (IllegalStateException e) {
+                showAlert(e.getMessage(), Alert.AlertType.WARNING);
+            }
             refreshTable();
-            show(); // Refresh stats
+            refreshStats();
+            // The kitchen queue must see a move made by hand before its next ticket
+            syncKitchen();
         } else {
             showAlert("Please select an order first!", Alert.AlertType.WARNING);
         }
@@ -275,21 +389,119 @@ public class SellerDashboard {
         alert.showAndWait();
     }
 
+    /**
+     * Brings the rows up to date with the store, keyed by order id: orders that are gone
+     * are removed, new ones inserted where the store has them, and only orders whose
+     * status changed are replaced. Untouched rows keep their cells, and the selected
+     * order stays selected.
+     */
     private void refreshTable() {
-        table.setItems(FXCollections.observableArrayList(DataStore.getInstance().getOrders()));
+        List<Order> orders = Store.getInstance().getOrders();
+        // With a row selected, every change costs the selection model a pass over all rows;
+        // select it again at the end instead (nothing is drawn in between)
+        Order selected = table.getSelectionModel().getSelectedItem();
+        int selectedIndex = table.getSelectionModel().getSelectedIndex();
+        table.getSelectionModel().clearSelection();
+
+        Map<String, Order> byId = new HashMap<>();
+        for (Order o : orders) {
+            byId.put(o.getOrderId(), o);
+        }
+
+        // Removed orders, in one pass over the rows
+        Set<Order> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Order row : rows) {
+            if (!byId.containsKey(row.getOrderId())) {
+                removed.add(row);
+                shownStatus.remove(row.getOrderId());
+            }
+        }
+        if (!removed.isEmpty()) {
+            rows.removeAll(removed);
+        }
+
+        // Walk both lists in store order, inserting new orders and replacing changed ones
+        int at = 0;
+        List<Order> inserts = new ArrayList<>();
+        for (Order o : orders) {
+            OrderStatus shown = shownStatus.get(o.getOrderId());
+            if (shown == null) {
+                inserts.add(o);
+                shownStatus.put(o.getOrderId(), o.getStatus());
+                continue;
+            }
+            if (!inserts.isEmpty()) {
+                rows.addAll(at, inserts);
+                at += inserts.size();
+                inserts.clear();
+            }
+            if (at >= rows.size() || !rows.get(at).getOrderId().equals(o.getOrderId())) {
+                // The store's order of orders changed; nothing to diff against
+                resetTable(orders, selected, selectedIndex);
+                return;
+            }
+            if (shown != o.getStatus()) {
+                // Status may be updated in place, so the row may already hold this instance
+                rows.set(at, o);
+                shownStatus.put(o.getOrderId(), o.getStatus());
+            }
+            at++;
+        }
+        if (!inserts.isEmpty()) {
+            rows.addAll(at, inserts);
+        }
+
+        reselect(selected, selectedIndex);
     }
 
-    private void startAutoRefresh() {
-        autoRefresh = new Timeline(new KeyFrame(Duration.seconds(5), e -> {
-            refreshTable();
-        }));
-        autoRefresh.setCycleCount(Timeline.INDEFINITE);
-        autoRefresh.play();
+    private void resetTable(List<Order> orders, Order selected, int selectedIndex) {
+        rows.setAll(orders);
+        shownStatus.clear();
+        for (Order o : orders) {
+            shownStatus.put(o.getOrderId(), o.getStatus());
+        }
+        reselect(selected, selectedIndex);
+    }
+
+    /** Selects the row of the given order again, trying its old index first. */
+    private void reselect(Order selected, int oldIndex) {
+        if (selected == null) {
+            return;
+        }
+        if (oldIndex < rows.size() && rows.get(oldIndex).getOrderId().equals(selected.getOrderId())) {
+            table.getSelectionModel().select(oldIndex);
+            return;
+        }
+        for (int i = 0; i < rows.size(); i++) {
+            if (rows.get(i).getOrderId().equals(selected.getOrderId())) {
+                table.getSelectionModel().select(i);
+                return;
+            }
+        }
+    }
+
+    private void startListening() {
+        // show() can run more than once; never subscribe twice
+        Store.getInstance().removeListener(orderListener);
+        Store.getInstance().addListener(orderListener);
+    }
+
+    private void stopListening() {
+        Store.getInstance().removeListener(orderListener);
     }
 
-    private void stopAutoRefresh() {
-        if (autoRefresh != null) {
-            autoRefresh.stop();
+    /**
+     * Called on the store's event thread. A burst of changes is folded into a
+     * single refresh on the FX thread.
+     */
+    private void onStoreChanged(StoreEvent event) {
+        if (event.isOrderEvent() && refreshQueued.compareAndSet(false, true)) {
+            Platform.runLater(() -> {
+                refreshQueued.set(false);
+                refreshTable();
+                refreshStats();
+                syncKitchen();
+            });
         }
     }
 